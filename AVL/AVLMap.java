@@ -0,0 +1,182 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * AVLMap
+ *
+ * An AVL map from keys of type K, ordered by a Comparator fixed at construction,
+ * to values of type V. All comparisons go through that one comparator; for
+ * primitive keys prefer IntAVLMap, LongAVLMap or DoubleAVLMap, which avoid boxing.
+ * The balancing is done by AbstractAVLMap.
+ *
+ */
+
+public class AVLMap<K, V> extends AbstractAVLMap<V, AVLMap.Entry<K, V>> {
+
+    private final Comparator<? super K> comparator;
+
+    /**
+     * creates an empty map ordered by comparator
+     * (use Comparator.naturalOrder() for Comparable keys)
+     */
+    public AVLMap(Comparator<? super K> comparator) {
+        if (comparator == null) {
+            throw new NullPointerException("comparator");
+        }
+        this.comparator = comparator;
+    }
+
+
+    /**
+     * public V get(K key)
+     *
+     * returns the value mapped to key, or null if key is not in the map
+     * Complexity : O(log(n))
+     */
+    public V get(K key) {
+        Entry<K, V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public boolean containsKey(K key)
+     *
+     * returns true if and only if key is in the map
+     * Complexity : O(log(n))
+     */
+    public boolean containsKey(K key) {
+        return find(key) != null;
+    }
+
+
+    /**
+     * public V put(K key, V value)
+     *
+     * maps key to value. returns the value key was mapped to before, or null if
+     * key is new to the map.
+     * Complexity : O(log(n))
+     */
+    public V put(K key, V value) {
+        Entry<K, V> parent = null;
+        Entry<K, V> node = root;
+        int comparison = 0;
+        while (node != null) {
+            comparison = comparator.compare(key, node.key);
+            if (comparison == 0) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        attach(parent, new Entry<K, V>(key, value), comparison < 0);
+        return null;
+    }
+
+
+    /**
+     * public V remove(K key)
+     *
+     * removes key from the map. returns the value it was mapped to, or null if
+     * key was not in the map.
+     * Complexity : O(log(n))
+     */
+    public V remove(K key) {
+        Entry<K, V> node = find(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+
+    /**
+     * public K firstKey()
+     *
+     * returns the smallest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public K firstKey() {
+        return keyOf(firstNode());
+    }
+
+
+    /**
+     * public K lastKey()
+     *
+     * returns the largest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public K lastKey() {
+        return keyOf(lastNode());
+    }
+
+
+    /**
+     * public K select(int i)
+     *
+     * returns the i-th smallest key, counting from 0
+     * throws IndexOutOfBoundsException if i is not in [0, size())
+     * Complexity : O(log(n))
+     */
+    public K select(int i) {
+        return selectNode(i).key;
+    }
+
+
+    /**
+     * public List<K> keys()
+     *
+     * Returns the keys of the map in order.
+     * Complexity : O(n)
+     */
+    public List<K> keys() {
+        List<K> keys = new ArrayList<K>(size());
+        for (Entry<K, V> node = firstNode(); node != null; node = successor(node)) {
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    private Entry<K, V> find(K key) {
+        Entry<K, V> node = root;
+        while (node != null) {
+            int comparison = comparator.compare(key, node.key);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static <K> K keyOf(Entry<K, ?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+
+    /**
+     * Entry
+     *
+     * A map node with a key of type K.
+     */
+    static final class Entry<K, V> extends AbstractAVLMap.Node<V, Entry<K, V>> {
+        final K key;
+
+        Entry(K key, V value) {
+            super(value);
+            this.key = key;
+        }
+    }
+}
@@ -1,5 +1,22 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 
 /**
@@ -20,29 +37,380 @@ public class AVLTree {
 	final static int Five_REBALANCES= 5;
 	final static int SIX_REBALANCES= 6;
 
-    AVLNode EXTERNAL_NODE;
+    /* the virtual leaf shared by every tree and every node: rank -1, size 0, parent always null */
+    static final AVLNode EXTERNAL_NODE = new AVLNode();
     AVLNode Root;
     AVLNode Max;
     AVLNode Min;
+    int[] frozenKeys; //keys in Eytzinger order from index 1 while the tree is frozen, otherwise null
+    String[] frozenValues; //the infos of frozenKeys, index by index
+    final Aggregate aggregate; //kept for every subtree in AggregateNodes, or null
  	   
        
-    enum Edge {
-    	Type10, Type01, Type11, Type20, Type02, Type12, Type21, 
-    	Type22, Type13, Type31, whatever,
- 
-    }
+    /* rank differences (left, right) of a node, encoded by TypesOfEdges() as left << 2 | right */
+    final static int EDGES_01 = 0 << 2 | 1;
+    final static int EDGES_02 = 0 << 2 | 2;
+    final static int EDGES_10 = 1 << 2 | 0;
+    final static int EDGES_11 = 1 << 2 | 1;
+    final static int EDGES_12 = 1 << 2 | 2;
+    final static int EDGES_13 = 1 << 2 | 3;
+    final static int EDGES_20 = 2 << 2 | 0;
+    final static int EDGES_21 = 2 << 2 | 1;
+    final static int EDGES_22 = 2 << 2 | 2;
+    final static int EDGES_31 = 3 << 2 | 1;
+    final static int EDGES_OTHER = 16; //any difference outside 0..3
+
+    /* set operations of union, intersect and difference */
+    final static int SET_UNION = 0;
+    final static int SET_INTERSECTION = 1;
+    final static int SET_DIFFERENCE = 2;
+    final static int PARALLEL_THRESHOLD = 1 << 10; //combined without forking while the smaller input is below this size
+    final static int PARALLEL_COPY_THRESHOLD = 1 << 14; //subtrees (or ranges) built or exported without forking
+
+    /* built-in aggregates; SUM, MIN and MAX read every info as a decimal long and skip null infos */
+    final static int AGGREGATE_COUNT = 0;
+    final static int AGGREGATE_SUM = 1;
+    final static int AGGREGATE_MIN = 2;
+    final static int AGGREGATE_MAX = 3;
+    public static final Aggregate COUNT = new BuiltInAggregate(AGGREGATE_COUNT);
+    public static final Aggregate SUM = new BuiltInAggregate(AGGREGATE_SUM);
+    public static final Aggregate MIN = new BuiltInAggregate(AGGREGATE_MIN);
+    public static final Aggregate MAX = new BuiltInAggregate(AGGREGATE_MAX);
 
     /**
-     * AVLTree sole constructor
+     * AVLTree constructor
      */
     public AVLTree() {
-        EXTERNAL_NODE = new AVLNode();
+        this((Aggregate) null);
+    }
+
+    /**
+     * AVLTree constructor for a tree that keeps aggregate over every subtree, so that
+     * aggregate(lo, hi) is answered in O(log(n)). Trees with an aggregate can only be
+     * joined or combined with trees that keep the same one.
+     */
+    public AVLTree(Aggregate aggregate) {
         Root = EXTERNAL_NODE;
         Max = EXTERNAL_NODE;
         Min = EXTERNAL_NODE;
+        this.aggregate = aggregate;
+    }
+
+    /**
+     * public static AVLTree fromSorted(int[] keys, String[] values)
+     *
+     * builds a perfectly balanced tree holding keys[i] with info values[i].
+     * rank, size, Min and Max are all set while the nodes are created.
+     * precondition: keys is strictly increasing and values has the same length
+     * Complexity : O(n)
+     */
+    public static AVLTree fromSorted(int[] keys, String[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values differ in length");
+        }
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("keys are not strictly increasing at index " + i);
+            }
+        }
+        AVLTree tree = new AVLTree();
+        if (keys.length > 0) {
+            tree.Root = tree.buildSorted(keys, values, 0, keys.length - 1, EXTERNAL_NODE);
+        }
+        return tree;
+    }
 
+    /**
+     * builds the subtree holding keys[low..high] under parent and returns its root
+     * Complexity : O(high - low)
+     */
+    private AVLNode buildSorted(int[] keys, String[] values, int low, int high, AVLNode parent) {
+        if (low > high) {
+            return EXTERNAL_NODE;
+        }
+        int middle = (low + high) >>> 1;
+        AVLNode node = new AVLNode(keys[middle], values[middle], parent);
+        node.left = buildSorted(keys, values, low, middle - 1, node);
+        node.right = buildSorted(keys, values, middle + 1, high, node);
+        node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+        node.size = node.left.size + node.right.size + 1;
+        if (middle == 0) {
+            Min = node;
+        }
+        if (middle == keys.length - 1) {
+            Max = node;
+        }
+        return node;
     }
-    
+
+    /**
+     * public static AVLTree parallelFromSorted(int[] keys, String[] values)
+     *
+     * builds the same tree as fromSorted, building the two halves of every large range in
+     * parallel (see invokeParallel). The input is checked by the same tasks.
+     * precondition: keys is strictly increasing and values has the same length
+     * Complexity : O(n) work, O(log(n)) span
+     */
+    public static AVLTree parallelFromSorted(int[] keys, String[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values differ in length");
+        }
+        AVLTree tree = new AVLTree();
+        if (keys.length > 0) {
+            tree.Root = invokeParallel(tree.new BuildTask(keys, values, 0, keys.length - 1, EXTERNAL_NODE));
+        }
+        return tree;
+    }
+
+    /**
+     * runs task in the ForkJoinPool of the calling thread, or in the common pool when the
+     * caller is not a pool thread; to use a pool of a given size, call from a task in it
+     * Complexity : that of the task
+     */
+    private static <T> T invokeParallel(ForkJoinTask<T> task) {
+        return ForkJoinTask.inForkJoinPool() ? task.invoke() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    /**
+     * public void writeTo(OutputStream out)
+     *
+     * writes the items of the tree to out in key order, in the snapshot format described
+     * in AVLTreeFormat. out is flushed but not closed.
+     * Complexity : O(n), with O(1) extra memory
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeItems(new AVLTreeFormat.Writer(out));
+    }
+
+    /**
+     * public void writeTo(WritableByteChannel channel)
+     *
+     * writes the items of the tree to channel, like writeTo(OutputStream). channel is not closed.
+     * Complexity : O(n), with O(1) extra memory
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeItems(new AVLTreeFormat.Writer(channel));
+    }
+
+    private void writeItems(AVLTreeFormat.Writer writer) throws IOException {
+        writer.writeHeader(size());
+        for (AVLNode node = Min; node.isRealNode(); node = findSuccessor(node)) {
+            writer.writeItem(node.key, node.value);
+        }
+        writer.finish();
+    }
+
+    /**
+     * public static AVLTree readFrom(InputStream in)
+     *
+     * reads a tree written by writeTo and builds it perfectly balanced, as fromSorted does,
+     * while the items stream in. throws IOException if in does not hold a valid snapshot.
+     * The source is read ahead, so it should hold nothing needed after the snapshot.
+     * Complexity : O(n), with O(log(n)) extra memory
+     */
+    public static AVLTree readFrom(InputStream in) throws IOException {
+        return readItems(new AVLTreeFormat.Reader(in));
+    }
+
+    /**
+     * public static AVLTree readFrom(ReadableByteChannel channel)
+     *
+     * reads a tree written by writeTo from channel, like readFrom(InputStream)
+     * Complexity : O(n), with O(log(n)) extra memory
+     */
+    public static AVLTree readFrom(ReadableByteChannel channel) throws IOException {
+        return readItems(new AVLTreeFormat.Reader(channel));
+    }
+
+    private static AVLTree readItems(AVLTreeFormat.Reader reader) throws IOException {
+        int count = reader.readHeader();
+        AVLTree tree = new AVLTree();
+        if (count > 0) {
+            tree.Root = tree.readSorted(reader, 0, count - 1, count);
+        }
+        return tree;
+    }
+
+    /**
+     * builds the subtree of items low..high (out of count) as they are read in order and
+     * returns its root; the caller sets its parent
+     * Complexity : O(high - low)
+     */
+    private AVLNode readSorted(AVLTreeFormat.Reader reader, int low, int high, int count) throws IOException {
+        if (low > high) {
+            return EXTERNAL_NODE;
+        }
+        int middle = (low + high) >>> 1;
+        AVLNode left = readSorted(reader, low, middle - 1, count);
+        int key = reader.readKey();
+        AVLNode node = new AVLNode(key, reader.readValue(), EXTERNAL_NODE);
+        node.left = left;
+        if (left.isRealNode()) {
+            left.parent = node;
+        }
+        node.right = readSorted(reader, middle + 1, high, count);
+        if (node.right.isRealNode()) {
+            node.right.parent = node;
+        }
+        node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+        node.size = node.left.size + node.right.size + 1;
+        if (middle == 0) {
+            Min = node;
+        }
+        if (middle == count - 1) {
+            Max = node;
+        }
+        return node;
+    }
+
+    /**
+     * public int insertAll(int[] keys, String[] values)
+     *
+     * inserts the items (keys[i], values[i]). keys already in the tree, and repeats
+     * of a key inside the batch, are skipped just like insert skips them.
+     * The batch is sorted first. Small batches are then inserted one by one in key
+     * order; a batch that is large compared to the tree is merged with the in-order
+     * node sequence and the tree is relinked in one balanced pass.
+     * returns the number of rebalancing operations (0 when the tree is relinked).
+     * Complexity : O(m log(m) + min(m log(n + m), n + m)) for a batch of m items
+     */
+    public int insertAll(int[] keys, String[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values differ in length");
+        }
+        thaw();
+        long[] order = sortedOrder(keys);
+        if (!preferRelink(order.length)) {
+            int rebalances = ZERO_REBALANCES;
+            for (long entry : order) {
+                int index = (int) entry;
+                rebalances += Math.max(0, insert(keys[index], values[index]));
+            }
+            return rebalances;
+        }
+        AVLNode[] nodes = new AVLNode[size() + order.length];
+        int count = 0;
+        AVLNode node = Min;
+        int j = 0;
+        while (node.isRealNode() || j < order.length) {
+            if (j < order.length && (!node.isRealNode() || (int) (order[j] >> 32) < node.key)) {
+                int index = (int) order[j];
+                if (count == 0 || nodes[count - 1].key != keys[index]) {
+                    nodes[count++] = newNode(keys[index], values[index], EXTERNAL_NODE);
+                }
+                j++;
+            }
+            else {
+                if (j < order.length && (int) (order[j] >> 32) == node.key) {
+                    j++;
+                    continue;
+                }
+                AVLNode next = findSuccessor(node);
+                nodes[count++] = node;
+                node = next;
+            }
+        }
+        relinkSorted(nodes, count);
+        return ZERO_REBALANCES;
+    }
+
+    /**
+     * public int deleteAll(int[] keys)
+     *
+     * deletes every item whose key appears in keys; keys that are not in the tree are ignored.
+     * Small batches are deleted one by one in key order; a batch that is large compared
+     * to the tree is removed while walking the tree in order and the survivors are
+     * relinked in one balanced pass.
+     * returns the number of rebalancing operations (0 when the tree is relinked).
+     * Complexity : O(m log(m) + min(m log(n), n)) for a batch of m keys
+     */
+    public int deleteAll(int[] keys) {
+        thaw();
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        if (!preferRelink(sorted.length)) {
+            int rebalances = ZERO_REBALANCES;
+            for (int k : sorted) {
+                rebalances += Math.max(0, delete(k));
+            }
+            return rebalances;
+        }
+        AVLNode[] nodes = new AVLNode[size()];
+        int count = 0;
+        int j = 0;
+        for (AVLNode node = Min; node.isRealNode(); ) {
+            AVLNode next = findSuccessor(node);
+            while (j < sorted.length && sorted[j] < node.key) {
+                j++;
+            }
+            if (j == sorted.length || sorted[j] != node.key) {
+                nodes[count++] = node;
+            }
+            node = next;
+        }
+        relinkSorted(nodes, count);
+        return ZERO_REBALANCES;
+    }
+
+    /**
+     * returns the batch positions sorted by key, each packed as (key << 32 | position)
+     * Complexity : O(m log(m))
+     */
+    private static long[] sortedOrder(int[] keys) {
+        long[] order = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        return order;
+    }
+
+    /**
+     * true when relinking all n + m nodes is cheaper than m root-to-leaf updates.
+     * relinking a node costs about twice a single step of insert/delete (measured by Benchmarks batchInsert)
+     * Complexity : O(1)
+     */
+    private boolean preferRelink(int batch) {
+        int n = size();
+        int height = 32 - Integer.numberOfLeadingZeros(n + batch);
+        return (long) batch * height >= 2L * (n + batch);
+    }
+
+    /**
+     * rebuilds the tree as a perfectly balanced tree over nodes[0..count-1], which are in key order
+     * Complexity : O(count)
+     */
+    private void relinkSorted(AVLNode[] nodes, int count) {
+        if (count == 0) {
+            Root = EXTERNAL_NODE;
+            Min = EXTERNAL_NODE;
+            Max = EXTERNAL_NODE;
+            return;
+        }
+        Root = linkSorted(nodes, 0, count - 1, EXTERNAL_NODE);
+        Min = nodes[0];
+        Max = nodes[count - 1];
+    }
+
+    /**
+     * links nodes[low..high] into a balanced subtree under parent and returns its root
+     * Complexity : O(high - low)
+     */
+    private AVLNode linkSorted(AVLNode[] nodes, int low, int high, AVLNode parent) {
+        if (low > high) {
+            return EXTERNAL_NODE;
+        }
+        int middle = (low + high) >>> 1;
+        AVLNode node = nodes[middle];
+        node.parent = parent;
+        node.left = linkSorted(nodes, low, middle - 1, node);
+        node.right = linkSorted(nodes, middle + 1, high, node);
+        node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+        node.size = node.left.size + node.right.size + 1;
+        updateAggregate(node);
+        return node;
+    }
+
  
   /**
    * public boolean empty()
@@ -61,11 +429,15 @@ public class AVLTree {
    *
    * returns the info of an item with key k if it exists in the tree
    * otherwise, returns null
+   * a frozen tree (see freeze) is searched in its index instead of its nodes
    * 
    * Complexity : O(log(n))
    */
   public String search(int k) 
   {
+	  if (frozenKeys != null) {
+		  return frozenSearch(k);
+	  }
 	  AVLNode p =helpSearch(Root,k);
 	  if (p.key==k){
 		  return p.value;
@@ -74,6 +446,180 @@ public class AVLTree {
   }
   
   
+  /**
+   * public void freeze()
+   *
+   * copies the keys and infos into arrays in Eytzinger order (the tree read level by level),
+   * which search uses instead of the nodes until the next insert, delete, insertAll,
+   * deleteAll, split or join. The top levels of the index share a few cache lines, and
+   * a lookup walks it with no branch on the comparison.
+   * Nodes changed directly through the IAVLNode setters are not seen by a frozen tree.
+   * Complexity : O(n)
+   */
+  public void freeze()
+  {
+	  int[] keys = new int[size() + 1];
+	  String[] values = new String[size() + 1];
+	  fillEytzinger(keysToArray(), infoToArray(), keys, values, 1, 0);
+	  frozenKeys = keys;
+	  frozenValues = values;
+  }
+  
+  /**
+   * public boolean isFrozen()
+   *
+   * returns true if and only if freeze() was called and the tree has not changed since
+   * Complexity : O(1)
+   */
+  public boolean isFrozen()
+  {
+	  return frozenKeys != null;
+  }
+  
+  /**
+   * drops the frozen index; every operation that changes the tree calls it first
+   * Complexity : O(1)
+   */
+  private void thaw()
+  {
+	  frozenKeys = null;
+	  frozenValues = null;
+  }
+  
+  /**
+   * places sortedKeys[next..] at the Eytzinger positions of the subtree of position i
+   * and returns the index of the first sorted key not placed
+   * Complexity : O(size of the subtree)
+   */
+  private static int fillEytzinger(int[] sortedKeys, String[] sortedValues, int[] keys, String[] values, int i, int next)
+  {
+	  if (i < keys.length) {
+		  next = fillEytzinger(sortedKeys, sortedValues, keys, values, 2 * i, next);
+		  keys[i] = sortedKeys[next];
+		  values[i] = sortedValues[next++];
+		  next = fillEytzinger(sortedKeys, sortedValues, keys, values, 2 * i + 1, next);
+	  }
+	  return next;
+  }
+  
+  /**
+   * search over the frozen index: descends to a position past the last level, going right
+   * while the key there is smaller than k, then drops the trailing right turns (and the
+   * final left one) to reach the smallest key >= k.
+   * Complexity : O(log(n))
+   */
+  private String frozenSearch(int k)
+  {
+	  int[] keys = frozenKeys;
+	  int i = 1;
+	  while (i < keys.length) {
+		  i = 2 * i + (keys[i] < k ? 1 : 0);
+	  }
+	  i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+	  return i != 0 && keys[i] == k ? frozenValues[i] : null;
+  }
+  
+  
+  /**
+   * public int floorKey(int k)
+   *
+   * returns the largest key in the tree that is <= k
+   * throws NoSuchElementException if there is no such key
+   * Complexity : O(log(n))
+   */
+  public int floorKey(int k)
+  {
+	  return keyOf(floorNode(k));
+  }
+  
+  /**
+   * public int ceilingKey(int k)
+   *
+   * returns the smallest key in the tree that is >= k
+   * throws NoSuchElementException if there is no such key
+   * Complexity : O(log(n))
+   */
+  public int ceilingKey(int k)
+  {
+	  return keyOf(ceilingNode(k));
+  }
+  
+  /**
+   * public int lowerKey(int k)
+   *
+   * returns the largest key in the tree that is < k
+   * throws NoSuchElementException if there is no such key
+   * Complexity : O(log(n))
+   */
+  public int lowerKey(int k)
+  {
+	  return keyOf(lowerNode(k));
+  }
+  
+  /**
+   * public int higherKey(int k)
+   *
+   * returns the smallest key in the tree that is > k
+   * throws NoSuchElementException if there is no such key
+   * Complexity : O(log(n))
+   */
+  public int higherKey(int k)
+  {
+	  return keyOf(higherNode(k));
+  }
+  
+  /**
+   * public String floorInfo(int k)
+   *
+   * returns the info of the largest key <= k, or null if there is no such key
+   * Complexity : O(log(n))
+   */
+  public String floorInfo(int k)
+  {
+	  return floorNode(k).value;
+  }
+  
+  /**
+   * public String ceilingInfo(int k)
+   *
+   * returns the info of the smallest key >= k, or null if there is no such key
+   * Complexity : O(log(n))
+   */
+  public String ceilingInfo(int k)
+  {
+	  return ceilingNode(k).value;
+  }
+  
+  /**
+   * public String lowerInfo(int k)
+   *
+   * returns the info of the largest key < k, or null if there is no such key
+   * Complexity : O(log(n))
+   */
+  public String lowerInfo(int k)
+  {
+	  return lowerNode(k).value;
+  }
+  
+  /**
+   * public String higherInfo(int k)
+   *
+   * returns the info of the smallest key > k, or null if there is no such key
+   * Complexity : O(log(n))
+   */
+  public String higherInfo(int k)
+  {
+	  return higherNode(k).value;
+  }
+  
+  private static int keyOf(AVLNode node) {
+	  if (!node.isRealNode()) {
+		  throw new NoSuchElementException();
+	  }
+	  return node.key;
+  }
+  
+  
   /**
    * private AVLNode helpSearch
    * This function uses binary search concept to find the desired key
@@ -98,6 +644,64 @@ public class AVLTree {
       }
       return currentNode;}
 
+  
+  /**
+   * returns the node with the smallest key >= k, or the virtual node if there is none
+   * Complexity : O(log(n))
+   */
+  private AVLNode ceilingNode(int k) {
+      AVLNode candidate = EXTERNAL_NODE;
+      AVLNode node = Root;
+      while (node.isRealNode()) {
+          if (node.key >= k) {
+              candidate = node;
+              node = node.left;
+          }
+          else {
+              node = node.right;
+          }
+      }
+      return candidate;
+  }
+  
+  
+  /**
+   * returns the node with the smallest key > k, or the virtual node if there is none
+   * Complexity : O(log(n))
+   */
+  private AVLNode higherNode(int k) {
+      return (k == Integer.MAX_VALUE) ? EXTERNAL_NODE : ceilingNode(k + 1);
+  }
+  
+  
+  /**
+   * returns the node with the largest key < k, or the virtual node if there is none
+   * Complexity : O(log(n))
+   */
+  private AVLNode lowerNode(int k) {
+      return (k == Integer.MIN_VALUE) ? EXTERNAL_NODE : floorNode(k - 1);
+  }
+  
+  
+  /**
+   * returns the node with the largest key <= k, or the virtual node if there is none
+   * Complexity : O(log(n))
+   */
+  private AVLNode floorNode(int k) {
+      AVLNode candidate = EXTERNAL_NODE;
+      AVLNode node = Root;
+      while (node.isRealNode()) {
+          if (node.key <= k) {
+              candidate = node;
+              node = node.right;
+          }
+          else {
+              node = node.left;
+          }
+      }
+      return candidate;
+  }
+
 
 
 
@@ -112,27 +716,61 @@ public class AVLTree {
    * Complexity : O(log(n))
    */
    public int insert(int k, String i) {//Lecture AVL Page 16
+	     thaw();
 	     if (empty()) { //if tree is empty
-	    	  AVLNode StartNode = new AVLNode(k, i, EXTERNAL_NODE);
+	    	  AVLNode StartNode = newNode(k, i, EXTERNAL_NODE);
 	    	  Root = StartNode;
 	    	  Max = StartNode;
 	    	  Min = StartNode;
+	    	  return ZERO_REBALANCES;
 	       }
 	       AVLNode Loc2Insert = helpSearch(Root, k);
 	       if (Loc2Insert.key == k) { //if node with the same key is found
 	    	   return (-1);
 	       }
-	       AVLNode FreshNode = new AVLNode(k, i, Loc2Insert);
+	       AVLNode FreshNode = newNode(k, i, Loc2Insert);
 	       if (k < Loc2Insert.key ) { //if key is smaller then pick left child
 	    	   Loc2Insert.left = FreshNode;
 	       }
 	       if (k > Loc2Insert.key ) { //if key is bigger then pick right child
 	    	   Loc2Insert.right = FreshNode;
 	       }
-	       NewInsertSize(Loc2Insert);//update size
 	       NewInsertMaxMin( FreshNode);//update max min
-	       return InsertReBalance(Loc2Insert);
+	       return InsertReBalance(Loc2Insert); //updates sizes too
 	   }
+
+   /**
+    * creates a node for the tree, an AggregateNode holding the value of its item if the tree keeps an aggregate
+    * Complexity : O(1)
+    */
+   private AVLNode newNode(int k, String i, AVLNode parent) {
+       if (aggregate == null) {
+           return new AVLNode(k, i, parent);
+       }
+       AggregateNode node = new AggregateNode(k, i, parent);
+       node.item = aggregate.valueOf(k, i);
+       node.total = node.item;
+       return node;
+   }
+
+   /**
+    * recomputes the aggregate of the subtree of node from its sons, if the tree keeps one
+    * Complexity : O(1)
+    */
+   private void updateAggregate(AVLNode node) {
+       if (aggregate != null) {
+           AggregateNode aggregateNode = (AggregateNode) node;
+           aggregateNode.total = aggregate.combine(aggregate.combine(totalOf(node.left), aggregateNode.item), totalOf(node.right));
+       }
+   }
+
+   /**
+    * returns the aggregate of the subtree of node (identity for the virtual node)
+    * Complexity : O(1)
+    */
+   private long totalOf(AVLNode node) {
+       return node.isRealNode() ? ((AggregateNode) node).total : aggregate.identity();
+   }
    
    
    /**
@@ -142,6 +780,7 @@ public class AVLTree {
    private void NewInsertSize(AVLNode point) {
        while (point.isRealNode()) {
     	   point.size += 1;
+    	   updateAggregate(point);
     	   point = point.parent;
        }
    }
@@ -161,46 +800,53 @@ public class AVLTree {
 	}
 
    /**
-    * InsertReBalance makes sure tree is rebalanced after the insertion
+    * InsertReBalance makes sure tree is rebalanced after the insertion, walking up from point once:
+    * every promoted node also gets its size increased, a rotation recomputes the sizes of the nodes
+    * it moves, and the ancestors above the place where rebalancing stops only need NewInsertSize
     * Complexity : O(log(n))
     */
    private int InsertReBalance(AVLNode point) {
-       if (point.isRealNode()==false) {
-           return ZERO_REBALANCES;
-       }
-       Edge edges = point.TypesOfEdges();
-       if ((edges == Edge.Type10 )|| edges ==Edge.Type01) { //AVL Lecture slide 21
-    	   point.promote();
-           return (InsertReBalance(point.parent)+1); //Problem is either fixed or moved up
-       }
-       else if ((edges == Edge.Type20 )) {
-           return InsertReBalanceType20(point);
-
-       }
-       else if ((edges == Edge.Type02 )) {
-           return InsertReBalanceType02(point);
-
-       }
-       else {
-    	   return ZERO_REBALANCES;  
+       int rebalances = ZERO_REBALANCES;
+       while (point.isRealNode()) {
+           switch (point.TypesOfEdges()) {
+           case EDGES_10:
+           case EDGES_01: //AVL Lecture slide 21
+        	   point.size += 1;
+        	   updateAggregate(point);
+        	   point.promote();
+        	   rebalances += ONE_REBALANCE; //Problem is either fixed or moved up
+        	   point = point.parent;
+        	   break;
+           case EDGES_20:
+        	   rebalances += InsertReBalanceType20(point);
+        	   NewInsertSize(point.parent.parent); //point.parent is now the root of the rotated subtree
+        	   return rebalances;
+           case EDGES_02:
+        	   rebalances += InsertReBalanceType02(point);
+        	   NewInsertSize(point.parent.parent);
+        	   return rebalances;
+           default:
+        	   NewInsertSize(point);
+        	   return rebalances;
+           }
        }
+       return rebalances;
    }
    
    
    /**
-    * Function InsertReBalance20 Rebalances tree if condition (edges == Edge.Type20 ) %n
-    * is fulfilled in InsertReBalance function
+    * Function InsertReBalance20 Rebalances tree if the rank differences of point are 2-0 %n
+    * in InsertReBalance function
     * Complexity : O(1)
     */
    private int InsertReBalanceType20(AVLNode point) {
        AVLNode right_son = point.right;
-       Edge right_edges = right_son.TypesOfEdges(); //what type of rank differences?
-       if ((Edge.Type21 ==right_edges  )) {
+       switch (right_son.TypesOfEdges()) { //what type of rank differences?
+       case EDGES_21:
     	   LeftRotate( point);
               point.demote(); //demote the node which previously was the main root
               return TWO_REBALANCES; // one rebalance complete
-       }
-       else if ((Edge.Type12==right_edges )) {
+       case EDGES_12:
                AVLNode FreshRoot = right_son.left; //the anticipated New root of balanced tree
                RightRotate( right_son);
                LeftRotate( point);
@@ -208,28 +854,25 @@ public class AVLTree {
                point.demote();
                right_son.demote();
                return Five_REBALANCES;
-       }
-       else {
+       default:
                return ZERO_REBALANCES;
-       }	   
-   
+       }
    }
    
    
    /**
-    * Function InsertReBalance02 Rebalances tree if condition (edges == Edge.Type02 ) %n
-    * is fulfilled in InsertReBalance function
+    * Function InsertReBalance02 Rebalances tree if the rank differences of point are 0-2 %n
+    * in InsertReBalance function
     * Complexity : O(1)
     */
    private int InsertReBalanceType02(AVLNode point) { //AVL Lecture slide 22
        AVLNode left_son = point.left;
-       Edge left_edges = left_son.TypesOfEdges(); //what type of rank differences?
-       if ((Edge.Type12 ==left_edges  )) {
+       switch (left_son.TypesOfEdges()) { //what type of rank differences?
+       case EDGES_12:
     	   RightRotate( point);
               point.demote(); //demote the node which previously was the main root
               return TWO_REBALANCES; // one rebalance complete
-       }
-       else if ((Edge.Type21==left_edges )) {
+       case EDGES_21:
                AVLNode FreshRoot = left_son.right; //the anticipated New root of balanced tree
                LeftRotate( left_son);
                RightRotate( point);
@@ -237,8 +880,7 @@ public class AVLTree {
                point.demote();
                left_son.demote();
                return Five_REBALANCES;
-       }
-       else {
+       default:
                return ZERO_REBALANCES;
        }
    }
@@ -254,8 +896,10 @@ public class AVLTree {
 	       AVLNode C = A.right;
 	       AVLNode D = B.left;
 	       AVLNode E = B.right;	
-	       if (A == Root) { //we assure that A has no parent,no we don't have to move up
-	           Root = B;
+	       if (!A.parent.isRealNode()) { //A has no parent, so only the tree's Root may need to move
+	           if (A == Root) {
+	               Root = B;
+	           }
 	       } 
 	       else {
 	    	   if (A.IsLeftSon()){
@@ -269,9 +913,13 @@ public class AVLTree {
 	       B.right = A;
 	       B.parent = A.parent;
 	       A.parent = B;
-	       E.parent = A;
+	       if (E.isRealNode()) {
+	    	   E.parent = A;
+	       }
 	       A.size = (1 + C.size +E.size );
 	       B.size = (1+ A.size + D.size );
+	       updateAggregate(A);
+	       updateAggregate(B);
 	       }
    
  
@@ -285,8 +933,10 @@ public class AVLTree {
        AVLNode C = A.left;
        AVLNode D = B.left;
        AVLNode E = B.right;	
-       if (A == Root) { //we assure that A has no parent,no we don't have to move up
-           Root = B;
+       if (!A.parent.isRealNode()) { //A has no parent, so only the tree's Root may need to move
+           if (A == Root) {
+               Root = B;
+           }
        } 
        else {
     	   if (A.IsLeftSon()){
@@ -300,9 +950,13 @@ public class AVLTree {
        B.parent = A.parent;
        A.right = D;
        A.parent = B;
-       D.parent = A;
+       if (D.isRealNode()) {
+    	   D.parent = A;
+       }
        A.size = (1 + C.size +D.size );
        B.size = (1+ A.size + E.size );
+       updateAggregate(A);
+       updateAggregate(B);
        }
    
 	   
@@ -321,8 +975,9 @@ public class AVLTree {
    */
    public int delete(int k)
    {
+       thaw();
        AVLNode nodeToDelete = helpSearch(Root, k);
-       if (!nodeToDelete.isRealNode()) {
+       if (!nodeToDelete.isRealNode() || nodeToDelete.key != k) {//helpSearch stops at the closest node
            return (-1);
        }
        NewDeleteMaxMin( nodeToDelete);
@@ -348,8 +1003,6 @@ public class AVLTree {
                {
                    Max = node.parent;
                }
-           
-    	   Max = Max.parent;
        }
        if (node.key == Min.key) {
     	   Min = findSuccessor(Min);
@@ -395,17 +1048,24 @@ public class AVLTree {
 	        if (succ.parent==null) 
 	        {
 	        	Root=succ.right;
-	        	succ.right.parent=succ.parent;
+	        	if (succ.right.isRealNode())
+	        		succ.right.parent=succ.parent;
 	        }
 	        else 
 	        {
 		        succ.changeParent(succ.right);
-	        	succ.right.parent=succ.parent;
+	        	if (succ.right.isRealNode())
+	        		succ.right.parent=succ.parent;
 	        }
             node.value = succ.value;
             node.key = succ.key;
-            node = succ.right;
-	        return node.parent;
+            if (aggregate != null) {//NewDeleteSize recomputes the totals from succ.parent up, through node
+            	((AggregateNode) node).item = ((AggregateNode) succ).item;
+            }
+            if (Max == succ) {//the item of Max now lives in node
+            	Max = node;
+            }
+	        return succ.parent;
 	   }
        throw new RuntimeException();
        }
@@ -431,7 +1091,7 @@ public class AVLTree {
    }
    
    /**
-    * findSuccessor finds the successor of a given node pnode 
+    * findSuccessor finds the successor of a given node pnode, or a virtual node if pnode holds the largest key
     * Complexity : O(log(n))
     */
    private AVLNode findSuccessor(AVLNode pnode) {
@@ -443,9 +1103,29 @@ public class AVLTree {
        } 
        else {
            node = pnode;
-           while ((node.IsLeftSon() ==false) &&(node.parent != null))
+           while (node.parent != null && node.parent.isRealNode() && node.IsLeftSon() == false)
                node = node.parent;
-           node = node.parent;
+           node = (node.parent == null) ? EXTERNAL_NODE : node.parent;
+       }
+       return node;
+   }
+   
+   /**
+    * findPredecessor finds the predecessor of a given node pnode, or a virtual node if pnode holds the smallest key
+    * Complexity : O(log(n))
+    */
+   private AVLNode findPredecessor(AVLNode pnode) {
+       AVLNode node;
+       if (pnode.left.isRealNode()) {
+           node = pnode.left;
+           while (node.right.isRealNode())
+               node = node.right;
+       } 
+       else {
+           node = pnode;
+           while (node.parent != null && node.parent.isRealNode() && node.IsLeftSon())
+               node = node.parent;
+           node = (node.parent == null) ? EXTERNAL_NODE : node.parent;
        }
        return node;
    }
@@ -457,6 +1137,7 @@ public class AVLTree {
    private void NewDeleteSize(AVLNode point) {
        while (point.isRealNode()) {
     	   point.size =point.size- 1;
+    	   updateAggregate(point);
     	   point = point.parent;
        }
    } 
@@ -469,9 +1150,8 @@ public class AVLTree {
        if (point.isRealNode()==false) {
            return ZERO_REBALANCES;
        }
-       Edge edges = point.TypesOfEdges();
-
-       if ((edges == Edge.Type22)) { //Case1
+       switch (point.TypesOfEdges()) {
+       case EDGES_22: //Case1
            if (point.right.isRealNode()==false && point.left.isRealNode()==false){
                    point.demote();
                    return ONE_REBALANCE + rebalanceAfterDeletion(point.parent);
@@ -484,14 +1164,14 @@ public class AVLTree {
                    return ONE_REBALANCE + rebalanceAfterDeletion(point.parent);
                }
            return ZERO_REBALANCES; 
-               
-       }
-       else if ((edges == Edge.Type31)) {
-               return rebalanceAfterDeletionType31(point);}
-        else if ((edges == Edge.Type13)) {
-               return rebalanceAfterDeletionType13(point);}
+       case EDGES_31:
+               return rebalanceAfterDeletionType31(point);
+       case EDGES_13:
+               return rebalanceAfterDeletionType13(point);
+       default:
                return ZERO_REBALANCES;
        }
+   }
    
 
    /**
@@ -500,20 +1180,18 @@ public class AVLTree {
     * */
    private int rebalanceAfterDeletionType31(AVLNode point) {
        AVLNode right_son = point.right;
-       Edge right_edges = right_son.TypesOfEdges(); //what type of rank differences?
-       if ((Edge.Type11 ==right_edges  )) {//Case2
+       switch (right_son.TypesOfEdges()) { //what type of rank differences?
+       case EDGES_11: //Case2
     	   LeftRotate(point);
     	   point.demote();
     	   right_son.promote();
     	   return THREE_REBALANCES;
-       }
-       else if ((Edge.Type21 ==right_edges  )) {//Case3
+       case EDGES_21: //Case3
     	   LeftRotate(point);
     	   point.demote();
     	   point.demote();
-    	   return THREE_REBALANCES+ rebalanceAfterDeletion(point.parent);////goes up to rebalancedelete and not 31
-       }
-       else if ((Edge.Type12 ==right_edges  )) {//Case4
+    	   return THREE_REBALANCES+ rebalanceAfterDeletion(right_son.parent);//right_son is the new subtree root, so go up from it
+       case EDGES_12: //Case4
            AVLNode FreshRoot = right_son.left;
            RightRotate(right_son);
            LeftRotate(point);
@@ -521,9 +1199,10 @@ public class AVLTree {
            point.demote();
            point.demote();
            right_son.demote();
-           return SIX_REBALANCES + rebalanceAfterDeletion(point.parent);
+           return SIX_REBALANCES + rebalanceAfterDeletion(FreshRoot.parent);
+       default:
+           return ZERO_REBALANCES;
        }
-       return ZERO_REBALANCES;
    }
 
    /**
@@ -533,20 +1212,18 @@ public class AVLTree {
 
    private int rebalanceAfterDeletionType13(AVLNode point) {
        AVLNode left_son = point.left;
-       Edge left_edges = left_son.TypesOfEdges(); //what type of rank differences?
-       if ((Edge.Type11 ==left_edges  )) {//Case2
+       switch (left_son.TypesOfEdges()) { //what type of rank differences?
+       case EDGES_11: //Case2
     	   RightRotate(point);
     	   point.demote();
     	   left_son.promote();
     	   return THREE_REBALANCES;
-       }
-       else if ((Edge.Type12 ==left_edges  )) {//Case3
+       case EDGES_12: //Case3
     	   RightRotate(point);
     	   point.demote();
     	   point.demote();
-    	   return THREE_REBALANCES+rebalanceAfterDeletion(point.parent); 
-       }
-       else if ((Edge.Type21 ==left_edges  )) {//Case4
+    	   return THREE_REBALANCES+rebalanceAfterDeletion(left_son.parent); 
+       case EDGES_21: //Case4
            AVLNode FreshRoot = left_son.right;
            LeftRotate(left_son);
            RightRotate(point);
@@ -554,9 +1231,10 @@ public class AVLTree {
            point.demote();
            point.demote();
            left_son.demote();
-           return SIX_REBALANCES+rebalanceAfterDeletion(point.parent);
+           return SIX_REBALANCES+rebalanceAfterDeletion(FreshRoot.parent);
+       default:
+           return ZERO_REBALANCES;
        }
-       return ZERO_REBALANCES;
    }   
    
    /**
@@ -592,27 +1270,29 @@ public class AVLTree {
    */
   public int[] keysToArray()
   {
-	  List<Integer> list = new ArrayList<Integer>();
-	  list = helpKeysToArray(Root, list);
-      int size = size();
-	  int[] arr = new int[size];
-	  for(int i = 0; i < size; i++) {
-		  arr[i] = list.get(i);}
-	  return arr;            
+	  int[] arr = new int[size()];
+	  keysToArray(arr, 0);
+	  return arr;
   }
   
   /**
-   * this recursive function goes through all of the nodes in the tree from smallest to biggest 
-   * and retrun a string with all of their keys in that order 
+   * public int keysToArray(int[] dest, int offset)
+   *
+   * Writes all keys in the tree, sorted, into dest starting at dest[offset] and returns
+   * how many were written (size()). Nothing is allocated.
+   * throws IndexOutOfBoundsException if dest has less than size() places from offset
    * Complexity : O(n)
-   */  
-  private List<Integer> helpKeysToArray(AVLNode node, List<Integer> list) {
-	  if (node == EXTERNAL_NODE){
-		  return list; 
+   */
+  public int keysToArray(int[] dest, int offset)
+  {
+	  int size = size();
+	  checkRange(dest.length, offset, size);
+	  AVLNode node = firstNode();
+	  for (int i = 0; i < size; i++) { //each edge is climbed at most twice over the whole walk
+		  dest[offset + i] = node.key;
+		  node = findSuccessor(node);
 	  }
-	  list = helpKeysToArray((AVLNode) node.getLeft(), list);
-	  list.add(node.getKey());
-	  return helpKeysToArray((AVLNode) node.getRight(), list);
+	  return size;
   }
   
   
@@ -626,27 +1306,98 @@ public class AVLTree {
    */
   public String[] infoToArray()
   {
-	  List<String> list = new ArrayList<String>();
-	  list = helpInfoToArray(Root,list);
-	  int size = size();
-	  String[] arr = new String[size];
-	  for(int i = 0; i < size; i++) {
-		  arr[i] = list.get(i);}
-	  return arr;                 
+	  String[] arr = new String[size()];
+	  infoToArray(arr, 0);
+	  return arr;
   }
   
   /**
-   * this recursive function goes through all of the nodes in the tree from smallest to biggest 
-   * and retrun a string with all of their keys in that order 
+   * public int infoToArray(String[] dest, int offset)
+   *
+   * Writes all info in the tree, sorted by their respective keys, into dest starting at
+   * dest[offset] and returns how many were written (size()). Nothing is allocated.
+   * throws IndexOutOfBoundsException if dest has less than size() places from offset
    * Complexity : O(n)
-   */  
-  private List<String> helpInfoToArray(AVLNode node, List<String> list) {
-	  if (node == EXTERNAL_NODE){
-		  return list; 
+   */
+  public int infoToArray(String[] dest, int offset)
+  {
+	  int size = size();
+	  checkRange(dest.length, offset, size);
+	  AVLNode node = firstNode();
+	  for (int i = 0; i < size; i++) {
+		  dest[offset + i] = node.value;
+		  node = findSuccessor(node);
+	  }
+	  return size;
+  }
+  
+  /**
+   * public int[] parallelKeysToArray()
+   *
+   * Returns the same array as keysToArray(). Every node knows the size of its subtree,
+   * so the place of each subtree in the output is known in advance, and large subtrees
+   * are copied in parallel (see invokeParallel).
+   * Complexity : O(n) work, O(log(n)) span
+   */
+  public int[] parallelKeysToArray()
+  {
+	  int[] arr = new int[size()];
+	  invokeParallel(new ExportTask(Root, arr, null, 0));
+	  return arr;
+  }
+  
+  /**
+   * public String[] parallelInfoToArray()
+   *
+   * Returns the same array as infoToArray(), filled in parallel like parallelKeysToArray().
+   * Complexity : O(n) work, O(log(n)) span
+   */
+  public String[] parallelInfoToArray()
+  {
+	  String[] arr = new String[size()];
+	  invokeParallel(new ExportTask(Root, null, arr, 0));
+	  return arr;
+  }
+  
+  /**
+   * writes the keys (or, when keys is null, the infos) of the subtree of node in order
+   * from offset on
+   * Complexity : O(size of the subtree)
+   */
+  private static void fillInOrder(AVLNode node, int[] keys, String[] values, int offset) {
+	  while (node.isRealNode()) { //recurses to the left, loops to the right
+		  fillInOrder(node.left, keys, values, offset);
+		  offset += node.left.size;
+		  if (keys != null) {
+			  keys[offset] = node.key;
+		  }
+		  else {
+			  values[offset] = node.value;
+		  }
+		  offset++;
+		  node = node.right;
+	  }
+  }
+  
+  /**
+   * returns the node with the smallest key, or the virtual node if the tree is empty
+   * Complexity : O(log(n))
+   */
+  private AVLNode firstNode() {
+	  AVLNode node = Root;
+	  if (node.isRealNode()) {
+		  while (node.left.isRealNode()) {
+			  node = node.left;
+		  }
+	  }
+	  return node;
+  }
+  
+  private static void checkRange(int length, int offset, int count) {
+	  if (offset < 0 || offset > length - count) {
+		  throw new IndexOutOfBoundsException("offset " + offset + " with " + count
+				  + " items does not fit an array of length " + length);
 	  }
-	  list = helpInfoToArray((AVLNode) node.getLeft(), list);
-	  list.add(node.getValue());
-	  return helpInfoToArray((AVLNode) node.getRight(), list);
   }
   
   
@@ -656,14 +1407,208 @@ public class AVLTree {
     * Returns the number of nodes in the tree.
     * Complexity: O(1)
     *
-    * precondition: none
-    * postcondition: none
+    * precondition: none
+    * postcondition: none
+    */
+   public int size()
+   {
+       return Root.size;
+   }
+
+   /**
+    * public int select(int i)
+    *
+    * Returns the key of rank i, i.e. the i-th smallest key counting from 0,
+    * by descending on the subtree sizes.
+    * throws IndexOutOfBoundsException if i is not in [0, size())
+    * Complexity: O(log(n))
+    */
+   public int select(int i)
+   {
+       if (i < 0 || i >= size()) {
+           throw new IndexOutOfBoundsException("index " + i + " for a tree of size " + size());
+       }
+       return selectNode(i).key;
+   }
+
+   /**
+    * returns the node of rank i, for 0 <= i < size()
+    * Complexity: O(log(n))
+    */
+   private AVLNode selectNode(int i)
+   {
+       AVLNode node = Root;
+       while (i != node.left.size) {
+           if (i < node.left.size) {
+               node = node.left;
+           }
+           else {
+               i -= node.left.size + 1;
+               node = node.right;
+           }
+       }
+       return node;
+   }
+
+   /**
+    * public int rank(int key)
+    *
+    * Returns the number of keys in the tree smaller than key; key itself does not
+    * have to be in the tree. For a key in the tree, select(rank(key)) == key.
+    * Complexity: O(log(n))
+    */
+   public int rank(int key)
+   {
+       int smaller = 0;
+       AVLNode node = Root;
+       while (node.isRealNode()) {
+           if (key <= node.key) {
+               node = node.left;
+           }
+           else {
+               smaller += node.left.size + 1;
+               node = node.right;
+           }
+       }
+       return smaller;
+   }
+
+   /**
+    * public int countRange(int lo, int hi)
+    *
+    * Returns the number of keys k in the tree with lo <= k <= hi (0 if lo > hi).
+    * Complexity: O(log(n))
+    */
+   public int countRange(int lo, int hi)
+   {
+       if (lo > hi) {
+           return 0;
+       }
+       int atMostHi = (hi == Integer.MAX_VALUE) ? size() : rank(hi + 1);
+       return atMostHi - rank(lo);
+   }
+
+   /**
+    * public long aggregate(int lo, int hi)
+    *
+    * Returns the aggregate of the tree (see AVLTree(Aggregate)) combined over the items with
+    * lo <= key <= hi in key order, or its identity if there are none.
+    * Below the node where the paths to lo and hi part, every step that stays inside the
+    * range takes a node together with a whole subtree, whose total every node keeps.
+    * Complexity: O(log(n))
+    */
+   public long aggregate(int lo, int hi)
+   {
+       if (aggregate == null) {
+           throw new IllegalStateException("the tree keeps no aggregate");
+       }
+       AVLNode node = Root;
+       while (node.isRealNode() && (node.key < lo || node.key > hi)) {
+           node = (node.key < lo) ? node.right : node.left;
+       }
+       if (!node.isRealNode() || lo > hi) {
+           return aggregate.identity();
+       }
+       long below = aggregate.identity(); //the items in range to the left of node
+       for (AVLNode left = node.left; left.isRealNode(); ) {
+           if (left.key >= lo) {
+               below = aggregate.combine(aggregate.combine(((AggregateNode) left).item, totalOf(left.right)), below);
+               left = left.left;
+           }
+           else {
+               left = left.right;
+           }
+       }
+       long above = aggregate.identity(); //the items in range to the right of node
+       for (AVLNode right = node.right; right.isRealNode(); ) {
+           if (right.key <= hi) {
+               above = aggregate.combine(above, aggregate.combine(totalOf(right.left), ((AggregateNode) right).item));
+               right = right.right;
+           }
+           else {
+               right = right.left;
+           }
+       }
+       return aggregate.combine(aggregate.combine(below, ((AggregateNode) node).item), above);
+   }
+
+   /**
+    * public PrimitiveIterator.OfInt rangeIterator(int lo, int hi)
+    *
+    * Returns an iterator over the keys k with lo <= k <= hi in ascending order.
+    * It descends once to the first key and then follows successors through the parent
+    * pointers, so a scan of k keys costs O(log(n) + k) and allocates nothing per key.
+    * The tree must not be changed while the iterator is in use.
+    * Complexity: O(log(n)) to create
+    */
+   public PrimitiveIterator.OfInt rangeIterator(int lo, int hi)
+   {
+       return new RangeIterator(ceilingNode(lo), lo, hi, true);
+   }
+
+   /**
+    * public PrimitiveIterator.OfInt descendingRangeIterator(int lo, int hi)
+    *
+    * Returns an iterator over the keys k with lo <= k <= hi in descending order,
+    * walking predecessors from the largest such key.
+    * The tree must not be changed while the iterator is in use.
+    * Complexity: O(log(n)) to create
+    */
+   public PrimitiveIterator.OfInt descendingRangeIterator(int lo, int hi)
+   {
+       return new RangeIterator(floorNode(hi), lo, hi, false);
+   }
+
+   /**
+    * public IntStream keyStream()
+    *
+    * Returns the keys in ascending order as a sequential stream; call parallel() to split it.
+    * The spliterator covers a range of ranks, so it knows the exact size of every part and
+    * splits in half in O(1); each part finds its first node with one select.
+    * The tree must not be changed while the stream is in use.
+    * Complexity: O(1) to create
+    */
+   public IntStream keyStream()
+   {
+       return StreamSupport.intStream(new KeySpliterator(0, size()), false);
+   }
+
+   /**
+    * public IntStream keyStream(int lo, int hi)
+    *
+    * Returns the keys k with lo <= k <= hi in ascending order, as keyStream() does.
+    * Complexity: O(log(n)) to create
+    */
+   public IntStream keyStream(int lo, int hi)
+   {
+       int from = rank(lo);
+       return StreamSupport.intStream(new KeySpliterator(from, from + countRange(lo, hi)), false);
+   }
+
+   /**
+    * public Stream<IAVLNode> entryStream()
+    *
+    * Returns the nodes in ascending key order, as keyStream() does, for pipelines that
+    * need the info of every key as well.
+    * Complexity: O(1) to create
+    */
+   public Stream<IAVLNode> entryStream()
+   {
+       return StreamSupport.stream(new EntrySpliterator(0, size()), false);
+   }
+
+   /**
+    * public Stream<IAVLNode> entryStream(int lo, int hi)
+    *
+    * Returns the nodes with lo <= key <= hi in ascending key order, as entryStream() does.
+    * Complexity: O(log(n)) to create
     */
-   public int size()
+   public Stream<IAVLNode> entryStream(int lo, int hi)
    {
-       return Root.size;
+       int from = rank(lo);
+       return StreamSupport.stream(new EntrySpliterator(from, from + countRange(lo, hi)), false);
    }
-   
+
      /**
     * public int getRoot()
     * Complexity: O(1)
@@ -682,102 +1627,100 @@ public class AVLTree {
    
    
    /**
-  * public string split(int x)
+  * public AVLTree[] split(int x)
   *
   * splits the tree into 2 trees according to the key x. 
   * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
-  * precondition: search(x) != null (i.e. you can also assume that the tree is not empty)
-  * postcondition: none
+  * The nodes are relinked, not copied: this tree is left empty and the node of x is dropped.
+  * precondition: none (if x is not in the tree the split simply falls between its neighbours)
+  * postcondition: empty()
   * Complexity: O(log(n))
   */   
  public AVLTree[] split(int x){
- {
-	   IAVLNode help = find(x);
-	   AVLTree treeOnLeft = new AVLTree() , treeOnRight= new AVLTree();
-	   if(!help.getLeft().isRealNode()) 
-		   treeOnLeft = new AVLTree();
-	   else {
-		   treeOnLeft.Root = twin((AVLNode) help.getLeft());
-		   treeOnLeft.Root.rank = help.getLeft().getHeight();
-		   treeOnLeft.Root.size = ((AVLNode)help.getLeft()).size;
-	   }
-	   if(!help.getRight().isRealNode()) 
-		   treeOnRight =new AVLTree();
-	   else {
-		   treeOnRight.Root = twin((AVLNode) help.getRight());
-		   treeOnRight.Root.rank = help.getRight().getHeight();
-		   treeOnRight.Root.size = ((AVLNode)help.getRight()).size;
-	   }
-	   try {
-	   while (help != Root){
-		   if(help.getParent().getLeft().equals(help)) {
-			   help=help.getParent();
-			   IAVLNode helpsecond =new AVLNode(new AVLNode(),new AVLNode(),help.getKey(),help.getValue());
-			   AVLTree helptree = new AVLTree();
-			   helptree.Root=twin((AVLNode) help.getRight());
-			   if(!helptree.Root.isRealNode())
-				   helptree = new AVLTree();
-			   treeOnRight.join(helpsecond, helptree);
-		   
-		   }
-		   else {
-			   help = help.getParent();
-			   IAVLNode helpsecond =new AVLNode(new AVLNode(),new AVLNode(),help.getKey(),help.getValue());
-			   AVLTree helptree = new AVLTree();
-			   helptree.Root=twin((AVLNode) help.getLeft());
-			  
-			   if(!helptree.Root.isRealNode())
-				   helptree = new AVLTree();
-			   treeOnLeft.join(helpsecond, helptree);   
-		   }  
-		   
-	   }}
-	   catch (Exception e) {
-	   } 
+	   thaw();
+	   AVLNode[] parts = splitNodes(Root, x);
 	   AVLTree[] myArray = new AVLTree[2];
-	   myArray[0] = treeOnLeft;
-	   myArray[1] = treeOnRight;
+	   myArray[0] = new AVLTree(parts[0], aggregate);
+	   myArray[1] = new AVLTree(parts[2], aggregate);
+	   Root = EXTERNAL_NODE;
+	   Min = EXTERNAL_NODE;
+	   Max = EXTERNAL_NODE;
 	   return myArray; 
-	   
- 	}		}
-	   
+ }
+
+	/**
+	 * creates a tree over an existing subtree
+	 * Complexity: O(log(n))
+	 */
+	private AVLTree(AVLNode root, Aggregate aggregate) {
+		Root = root;
+		this.aggregate = aggregate;
+		resetMinMax();
+	}
+
+	/**
+	 * splits the subtree of root around key k by climbing from k's position and joining
+	 * every ancestor (with its other subtree) onto the side it belongs to.
+	 * Returns [root of keys < k, node with key k or null, root of keys > k]. 
+	 * Each join costs the rank difference of its trees, and these differences telescope.
+	 * Complexity: O(log(n))
+	 */
+	private AVLNode[] splitNodes(AVLNode root, int k) {
+		AVLNode parent = EXTERNAL_NODE;
+		AVLNode node = root;
+		while (node.isRealNode() && node.key != k) {
+			parent = node;
+			node = (k < node.key) ? node.left : node.right;
+		}
+		AVLNode leftRoot = EXTERNAL_NODE;
+		AVLNode rightRoot = EXTERNAL_NODE;
+		AVLNode found = null;
+		if (node.isRealNode()) {
+			found = node;
+			parent = node.parent;
+			leftRoot = detach(node.left);
+			rightRoot = detach(node.right);
+			node.left = EXTERNAL_NODE;
+			node.right = EXTERNAL_NODE;
+			node.parent = EXTERNAL_NODE;
+			node.rank = 0;
+			node.size = 1;
+			updateAggregate(node);
+		}
+		while (parent.isRealNode()) {
+			AVLNode grandParent = parent.parent;
+			if (k < parent.key) {//parent and its right subtree are bigger than k
+				rightRoot = joinNodes(rightRoot, parent, detach(parent.right));
+			}
+			else {
+				leftRoot = joinNodes(detach(parent.left), parent, leftRoot);
+			}
+			parent = grandParent;
+		}
+		AVLNode[] parts = {leftRoot, found, rightRoot};
+		return parts;
+	}
+
 	/**
-	 * returns the node of an item with key k if it exists in the tree.otherwise, returns null
+	 * returns the node with key k if it exists in the tree, otherwise returns null
 	 * Complexity: O(log(n))
 	 */
 	 private AVLNode find(int k) {
 		   AVLNode later=Root;
-		   if(later !=null) {
-			  while (later.isRealNode()){
-				  if (k == later.getKey()) 
-					  return later;
-				  else
-				  {
-					  if (k < later.getKey()) 
-						  later=later.left;
-					  else 
-						  later = later.right;
-				  }
-			  }
+		   while (later.isRealNode()){
+			   if (k == later.key) 
+				   return later;
+			   later = (k < later.key) ? later.left : later.right;
 		   }
 		   return null;
 	 }
-	 
-	 
-	private AVLNode twin(AVLNode node) {
-	     if (node == null) {
-	         return null;
-	     }
-	     AVLNode copied = new AVLNode(node.right,node.left,node.key, node.value);
-	     copied.setLeft(twin((AVLNode) node.getLeft()));
-	     copied.setRight(twin((AVLNode) node.getRight()));
-	     return copied;
-	 }  
 
 
    /**
     * public join(IAVLNode x, AVLTree t)
     * joins t and x with the tree. 	
+    * x itself becomes a node of the tree (if it is not an AVLNode, a node with its key and info is created).
+    * t is left empty.
     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
 	* precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
     * postcondition: none
@@ -785,148 +1728,625 @@ public class AVLTree {
     */   
 	public int join(IAVLNode x, AVLTree t)
 	   {
-		   IAVLNode first , secondb;
-		   int cnt;
-		   if(this.Root==null) {
-			   t.insert(x.getKey(), x.getValue());
-			   Root=t.Root;
-			   return t.Root.getHeight()+1;
+		   requireSameAggregate(t);
+		   thaw();
+		   t.thaw();
+		   AVLNode middle;
+		   if (aggregate == null) {
+			   middle = (x instanceof AVLNode) ? (AVLNode) x : new AVLNode(x.getKey(), x.getValue(), EXTERNAL_NODE);
 		   }
-		   if(t.Root ==null) {
-			   this.insert(x.getKey(), x.getValue());
-			   return Root.getHeight()+1;
+		   else if (x instanceof AggregateNode) {//its item may have been computed by another aggregate
+			   middle = (AVLNode) x;
+			   ((AggregateNode) middle).item = aggregate.valueOf(x.getKey(), x.getValue());
 		   }
-		   int huge1=Root.size;
-		   int huge2 = t.size();
-		   if((Math.abs(t.getRoot().getHeight() - Root.getHeight())) <= 1) {
-			   if(t.getRoot().getKey() > Root.getKey()) {
-				   x.setLeft(Root);
-				   x.setRight(t.getRoot());
-				   newHeight((AVLNode)x);
-				   this.Root= (AVLNode) x;
-				   t.Root = (AVLNode) x; //
-				   ((AVLNode)x).size = (huge1+huge2+1);
-				   return 1;
-			   }
-			   else {
-				   x.setLeft(t.getRoot());
-				   x.setRight(Root);
-				   newHeight((AVLNode)x);
-				   this.Root= (AVLNode) x;
-				   t.Root = (AVLNode) x; //
-				   ((AVLNode)x).size = (huge1+huge2+1);
-				   return 1;
-				   
-			   }
+		   else {
+			   middle = newNode(x.getKey(), x.getValue(), EXTERNAL_NODE);
+		   }
+		   int complexity = Math.abs(Root.rank - t.Root.rank) + 1;
+		   if ((t.Root.isRealNode() && t.Root.key < middle.key) || (Root.isRealNode() && Root.key > middle.key)) {
+			   Root = joinNodes(t.Root, middle, Root);//t holds the smaller keys
 		   }
-		   int p= Math.abs(t.getRoot().getHeight() - Root.getHeight());
-		   if (t.getRoot().getHeight() > Root.getHeight()) {
-			   first = t.getRoot();
-			   if(t.getRoot().getKey() > Root.getKey()) {
-				   while (first.getHeight() > Root.getHeight()) {
-					   first = first.getLeft();
-				   }
-				   cnt = ((AVLNode)first).size;
-				   secondb = first.getParent();
-				   x.setLeft(Root);
-				   x.setRight(first);
-				   x.setParent(secondb);
-				   secondb.setLeft(x);
-				   newHeight((AVLNode) x);
-				   ((AVLNode)x).size = cnt+huge1+1;
-				   Root = (AVLNode) t.getRoot();
-				   plus((AVLNode)x.getParent());
-				   InsertReBalance((AVLNode)x.getParent());
-
-				   return (p+1);
-			   }
-			   else {
-				   while (first.getHeight() > Root.getHeight()) {
-					   first = first.getRight();
-				   }
-				   cnt = ((AVLNode)first).size;
-					   secondb = first.getParent();
-					   x.setLeft(first);
-					   x.setRight(Root);
-					   x.setParent(secondb);
-					   secondb.setRight(x);
-					   newHeight((AVLNode) x);
-					   Root = (AVLNode) t.getRoot();
-					   ((AVLNode)x).size= (cnt+huge1+1);
-					   plus((AVLNode)x.getParent());
-					   InsertReBalance((AVLNode)x.getParent());
-					   return (p+1);
-					   
-				   }
-			   }
 		   else {
-			   first=Root;
-			   if(t.getRoot().getKey() < Root.getKey()) {
-				   while (first.getHeight() > t.getRoot().getHeight()) {
-					   first = first.getLeft();
-				   }
+			   Root = joinNodes(Root, middle, t.Root);
+		   }
+		   resetMinMax();
+		   t.Root = EXTERNAL_NODE;
+		   t.Min = EXTERNAL_NODE;
+		   t.Max = EXTERNAL_NODE;
+		   return complexity;
+	   }   
 
-				   cnt = ((AVLNode)first).size;
-				   secondb=first.getParent();
-				   x.setLeft(t.getRoot());
-				   x.setRight(first);
-				   x.setParent(secondb);
-				   secondb.setLeft(x);
-				   newHeight((AVLNode) x);
-				   ((AVLNode)x).size = (cnt+huge2+1);
-				   plus((AVLNode)x.getParent());
-				   InsertReBalance((AVLNode)x.getParent());
-
-				   return (p+1);
-				   
-			   }
-			   else {
-				   while (first.getHeight() > t.getRoot().getHeight()) {
-					   first = first.getRight();
-				   }
 
-				   cnt = ((AVLNode)first).size;
-				   secondb=first.getParent();
-				   x.setLeft(first);
-				   x.setRight(t.getRoot());
-				   x.setParent(secondb);
-				   secondb.setRight(x);
-				   newHeight((AVLNode) x);
-				   ((AVLNode)x).size = (cnt+huge2+1);
-				   plus((AVLNode)x.getParent());
-				   InsertReBalance((AVLNode)x.getParent());
-				   return (p+1);
-				   
-			   }
-		   }
+	/**
+	 * public void union(AVLTree t)
+	 *
+	 * adds the items of t to the tree; for a key in both trees the info of this tree is kept.
+	 * The nodes are relinked, not copied: t is left empty, as after join.
+	 * Splits the tree around the root of t and unites the two halves, in parallel (see
+	 * invokeParallel), before joining them back around that root.
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n) log(m)) span, where m <= n are the sizes
+	 */
+	public void union(AVLTree t) {
+		setOperation(SET_UNION, t);
+	}
+
+	/**
+	 * public void intersect(AVLTree t)
+	 *
+	 * keeps only the items whose key is also in t, with the info of this tree. t is left empty.
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n) log(m)) span, where m <= n are the sizes
+	 */
+	public void intersect(AVLTree t) {
+		setOperation(SET_INTERSECTION, t);
+	}
+
+	/**
+	 * public void difference(AVLTree t)
+	 *
+	 * removes the items whose key is in t. t is left empty.
+	 * Complexity: O(m log(n/m + 1)) work and O(log(n) log(m)) span, where m <= n are the sizes
+	 */
+	public void difference(AVLTree t) {
+		setOperation(SET_DIFFERENCE, t);
+	}
+
+	private void setOperation(int operation, AVLTree t) {
+		requireSameAggregate(t);
+		thaw();
+		t.thaw();
+		if (t == this) {
+			if (operation == SET_DIFFERENCE) {
+				Root = EXTERNAL_NODE;
+				resetMinMax();
+			}
+			return;
+		}
+		AVLNode first = Root;
+		AVLNode second = t.Root;
+		Root = EXTERNAL_NODE; //no node of either tree is the Root while the rotations run
+		t.Root = EXTERNAL_NODE;
+		t.Min = EXTERNAL_NODE;
+		t.Max = EXTERNAL_NODE;
+		if (Math.min(first.size, second.size) < PARALLEL_THRESHOLD) {
+			Root = combine(operation, first, second);
+		}
+		else {
+			Root = invokeParallel(new SetOperation(operation, first, second));
+		}
+		resetMinMax();
+	}
+
+	/**
+	 * nodes only move between trees that keep the same aggregate (or none)
+	 * Complexity: O(1)
+	 */
+	private void requireSameAggregate(AVLTree t) {
+		if (t.aggregate != aggregate) {
+			throw new IllegalArgumentException("the trees keep different aggregates");
+		}
+	}
+
+	/**
+	 * applies the set operation to the subtrees of first and second (both detached) and
+	 * returns the root of the result. The root of second splits first; the two sides are
+	 * combined recursively, and in parallel when they are large enough.
+	 * Complexity: O(m log(n/m + 1)) work
+	 */
+	private AVLNode combine(int operation, AVLNode first, AVLNode second) {
+		if (!first.isRealNode() || !second.isRealNode()) {
+			if (operation == SET_UNION && !first.isRealNode()) {
+				return second;
+			}
+			return operation == SET_INTERSECTION ? EXTERNAL_NODE : first;
+		}
+		boolean parallel = Math.min(first.size, second.size) >= PARALLEL_THRESHOLD; //the work grows with the smaller input
+		AVLNode secondLeft = detach(second.left);
+		AVLNode secondRight = detach(second.right);
+		AVLNode[] parts = splitNodes(first, second.key);
+		AVLNode left;
+		AVLNode right;
+		if (parallel) {
+			SetOperation leftTask = new SetOperation(operation, parts[0], secondLeft);
+			leftTask.fork();
+			right = combine(operation, parts[2], secondRight);
+			left = leftTask.join();
+		}
+		else {
+			left = combine(operation, parts[0], secondLeft);
+			right = combine(operation, parts[2], secondRight);
+		}
+		AVLNode found = parts[1];
+		switch (operation) {
+			case SET_UNION:
+				return joinNodes(left, found != null ? found : second, right);
+			case SET_INTERSECTION:
+				return found != null ? joinNodes(left, found, right) : joinTwo(left, right);
+			default:
+				return joinTwo(left, right);
+		}
+	}
+
+	/**
+	 * joins two detached subtrees, all keys of left below all keys of right, by unlinking
+	 * the largest node of left and using it as the middle node
+	 * Complexity: O(log(n))
+	 */
+	private AVLNode joinTwo(AVLNode left, AVLNode right) {
+		if (!left.isRealNode()) {
+			return right;
+		}
+		if (!right.isRealNode()) {
+			return left;
+		}
+		AVLNode last = left;
+		while (last.right.isRealNode()) {
+			last = last.right;
+		}
+		AVLNode rest;
+		if (last == left) {
+			rest = detach(last.left);
+		}
+		else { //last has no right son: its left son takes its place
+			AVLNode parent = last.parent;
+			parent.right = last.left;
+			if (last.left.isRealNode()) {
+				last.left.parent = parent;
+			}
+			rest = fixUp(parent);
+		}
+		return joinNodes(rest, last, right);
+	}
 
-	   }   
-	   
 	 /**
-	  * updates the height of the nodes after joining them from x to root
-	  * Complexity: O(log(n))
+	  * joins the trees rooted at left and right using x, where keys(left) < x.key < keys(right).
+	  * x is hung on the spine of the taller tree at the first node whose rank is at most
+	  * one above the shorter tree, and the path back up is fixed. Returns the new root.
+	  * Complexity: O(|left.rank - right.rank| + 1)
 	  */
-	 
-	 private void newHeight( AVLNode node )
-	 {
-	    while ( node != null )
-	    {
-	       node.rank = Math.max(node.left.rank, node.right.rank ) + 1 ;     
-	       node = node.parent;            
-	    }
-	    
+	 private AVLNode joinNodes(AVLNode left, AVLNode x, AVLNode right) {
+		 if (left.rank > right.rank + 1) {
+			 AVLNode secondb = left;
+			 AVLNode first = left.right;
+			 while (first.rank > right.rank + 1) {
+				 secondb = first;
+				 first = first.right;
+			 }
+			 link(x, first, right);
+			 secondb.right = x;
+			 x.parent = secondb;
+			 return fixUp(secondb);
+		 }
+		 if (right.rank > left.rank + 1) {
+			 AVLNode secondb = right;
+			 AVLNode first = right.left;
+			 while (first.rank > left.rank + 1) {
+				 secondb = first;
+				 first = first.left;
+			 }
+			 link(x, left, first);
+			 secondb.left = x;
+			 x.parent = secondb;
+			 return fixUp(secondb);
+		 }
+		 link(x, left, right);
+		 x.parent = EXTERNAL_NODE;
+		 return x;
+	 }
+
+	 /**
+	  * makes left and right the sons of x and updates its rank and size
+	  * Complexity: O(1)
+	  */
+	 private void link(AVLNode x, AVLNode left, AVLNode right) {
+		 x.left = left;
+		 x.right = right;
+		 if (left.isRealNode()) {
+			 left.parent = x;
+		 }
+		 if (right.isRealNode()) {
+			 right.parent = x;
+		 }
+		 update(x);
+	 }
+
+	 /**
+	  * cuts node from its parent so it can serve as the root of a tree
+	  * Complexity: O(1)
+	  */
+	 private AVLNode detach(AVLNode node) {
+		 if (node.isRealNode()) {
+			 node.parent = EXTERNAL_NODE;
+		 }
+		 return node;
+	 }
+
+	 /**
+	  * recomputes the rank, size (and aggregate) of node from its sons
+	  * Complexity: O(1)
+	  */
+	 private void update(AVLNode node) {
+		 node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+		 node.size = node.left.size + node.right.size + 1;
+		 updateAggregate(node);
 	 }
+
 	 /**
+	  * walks from node to the root of its tree updating rank and size, and rotates
+	  * wherever the ranks of the two sons differ by more than one. Returns the root.
+	  * Complexity: O(depth of node)
+	  */
+	 private AVLNode fixUp(AVLNode node) {
+		 while (true) {
+			 update(node);
+			 if (node.left.rank > node.right.rank + 1) {
+				 AVLNode son = node.left;
+				 if (son.right.rank > son.left.rank) {
+					 LeftRotate(son);
+					 update(son);
+					 update(son.parent);
+				 }
+				 RightRotate(node);
+				 update(node);
+				 node = node.parent;
+				 update(node);
+			 }
+			 else if (node.right.rank > node.left.rank + 1) {
+				 AVLNode son = node.right;
+				 if (son.left.rank > son.right.rank) {
+					 RightRotate(son);
+					 update(son);
+					 update(son.parent);
+				 }
+				 LeftRotate(node);
+				 update(node);
+				 node = node.parent;
+				 update(node);
+			 }
+			 if (!node.parent.isRealNode()) {
+				 return node;
+			 }
+			 node = node.parent;
+		 }
+	 }
 
-	  * updates the size of the nodes after joining them,from node x to root
+	 /**
+	  * sets Min and Max by walking down the outer spines of the tree
 	  * Complexity: O(log(n))
 	  */
-	 private void plus(AVLNode node) {
-		   while (node != null) {
-			   node.size = node.left.size + node.right.size + 1;
-			   node = node.parent;
+	 private void resetMinMax() {
+		 Min = Root;
+		 Max = Root;
+		 if (!Root.isRealNode()) {
+			 return;
+		 }
+		 while (Min.left.isRealNode()) {
+			 Min = Min.left;
+		 }
+		 while (Max.right.isRealNode()) {
+			 Max = Max.right;
+		 }
+	 }
+
+   
+   /**
+    * BuildTask builds the subtree of keys[low..high] like buildSorted, forking the left
+    * half of ranges larger than PARALLEL_COPY_THRESHOLD. Each range is checked to be
+    * strictly increasing (including its first key against the key before it).
+    */
+   @SuppressWarnings("serial")
+   private final class BuildTask extends RecursiveTask<AVLNode> {
+	   private final int[] keys;
+	   private final String[] values;
+	   private final int low;
+	   private final int high;
+	   private final AVLNode parent;
+
+	   BuildTask(int[] keys, String[] values, int low, int high, AVLNode parent) {
+		   this.keys = keys;
+		   this.values = values;
+		   this.low = low;
+		   this.high = high;
+		   this.parent = parent;
+	   }
+
+	   protected AVLNode compute() {
+		   if (high - low < PARALLEL_COPY_THRESHOLD) {
+			   for (int i = Math.max(low, 1); i <= high; i++) {
+				   if (keys[i - 1] >= keys[i]) {
+					   throw new IllegalArgumentException("keys are not strictly increasing at index " + i);
+				   }
+			   }
+			   return buildSorted(keys, values, low, high, parent);
+		   }
+		   int middle = (low + high) >>> 1;
+		   if (keys[middle - 1] >= keys[middle]) { //the one pair no leaf range checks
+			   throw new IllegalArgumentException("keys are not strictly increasing at index " + middle);
+		   }
+		   AVLNode node = new AVLNode(keys[middle], values[middle], parent);
+		   BuildTask left = new BuildTask(keys, values, low, middle - 1, node);
+		   left.fork();
+		   node.right = new BuildTask(keys, values, middle + 1, high, node).compute();
+		   node.left = left.join();
+		   node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+		   node.size = node.left.size + node.right.size + 1;
+		   return node;
+	   }
+   }
+
+
+   /**
+    * ExportTask writes the subtree of node in order from offset on, into keys or (when keys
+    * is null) into values, forking the left son of subtrees larger than PARALLEL_COPY_THRESHOLD
+    */
+   @SuppressWarnings("serial")
+   private static final class ExportTask extends RecursiveAction {
+	   private final AVLNode node;
+	   private final int[] keys;
+	   private final String[] values;
+	   private final int offset;
+
+	   ExportTask(AVLNode node, int[] keys, String[] values, int offset) {
+		   this.node = node;
+		   this.keys = keys;
+		   this.values = values;
+		   this.offset = offset;
+	   }
+
+	   protected void compute() {
+		   if (node.size < PARALLEL_COPY_THRESHOLD) {
+			   fillInOrder(node, keys, values, offset);
+			   return;
+		   }
+		   ExportTask left = new ExportTask(node.left, keys, values, offset);
+		   left.fork();
+		   int position = offset + node.left.size;
+		   if (keys != null) {
+			   keys[position] = node.key;
+		   }
+		   else {
+			   values[position] = node.value;
+		   }
+		   new ExportTask(node.right, keys, values, position + 1).compute();
+		   left.join();
+	   }
+   }
+
+
+   /**
+    * SetOperation runs combine as a fork/join task, so the two sides of a split are
+    * combined on different threads. The trees are disjoint sets of nodes, and the
+    * shared EXTERNAL_NODE is never written, so the tasks need no locking.
+    */
+   @SuppressWarnings("serial")
+   private final class SetOperation extends RecursiveTask<AVLNode> {
+	   private final int operation;
+	   private final AVLNode first;
+	   private final AVLNode second;
+
+	   SetOperation(int operation, AVLNode first, AVLNode second) {
+		   this.operation = operation;
+		   this.first = first;
+		   this.second = second;
+	   }
+
+	   protected AVLNode compute() {
+		   return combine(operation, first, second);
+	   }
+   }
+
+
+   /**
+    * RangeIterator walks the keys between lo and hi from a start node, through successors
+    * when ascending and through predecessors otherwise.
+    */
+   private class RangeIterator implements PrimitiveIterator.OfInt {
+	   private AVLNode next;
+	   private final int lo;
+	   private final int hi;
+	   private final boolean ascending;
+
+	   RangeIterator(AVLNode start, int lo, int hi, boolean ascending) {
+		   this.next = start;
+		   this.lo = lo;
+		   this.hi = hi;
+		   this.ascending = ascending;
+	   }
+
+	   @Override
+	   public boolean hasNext() {
+		   return next.isRealNode() && (ascending ? next.key <= hi : next.key >= lo);
+	   }
+
+	   @Override
+	   public int nextInt() {
+		   if (!hasNext()) {
+			   throw new NoSuchElementException();
+		   }
+		   int key = next.key;
+		   next = ascending ? findSuccessor(next) : findPredecessor(next);
+		   return key;
+	   }
+   }
+
+
+   /**
+    * RankSpliterator covers the nodes of ranks from..to-1. trySplit hands the lower half of
+    * the ranks to a new spliterator in O(1); a part finds its first node with selectNode
+    * when its traversal starts and then walks successors.
+    */
+   private abstract class RankSpliterator {
+	   int from;
+	   final int to;
+	   AVLNode next; //the node of rank from, or null until the traversal starts
+
+	   RankSpliterator(int from, int to) {
+		   this.from = from;
+		   this.to = to;
+	   }
+
+	   /**
+	    * moves past the node of rank from, which must be < to, and returns it
+	    */
+	   final AVLNode advance() {
+		   AVLNode node = (next != null) ? next : selectNode(from);
+		   next = findSuccessor(node);
+		   from++;
+		   return node;
+	   }
+
+	   /**
+	    * gives the lower half of the remaining ranks to prefix and keeps the upper half
+	    */
+	   final <S extends RankSpliterator> S splitInto(S prefix) {
+		   prefix.next = next;
+		   from = prefix.to;
+		   next = null;
+		   return prefix;
+	   }
+
+	   public long estimateSize() {
+		   return to - from;
+	   }
+
+	   public int characteristics() {
+		   return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED | Spliterator.SORTED
+				   | Spliterator.DISTINCT | Spliterator.NONNULL;
+	   }
+   }
+
+
+   /**
+    * KeySpliterator yields the keys of a range of ranks, in natural order
+    */
+   private final class KeySpliterator extends RankSpliterator implements Spliterator.OfInt {
+
+	   KeySpliterator(int from, int to) {
+		   super(from, to);
+	   }
+
+	   @Override
+	   public Spliterator.OfInt trySplit() {
+		   return (to - from < 2) ? null : splitInto(new KeySpliterator(from, (from + to) >>> 1));
+	   }
+
+	   @Override
+	   public boolean tryAdvance(IntConsumer action) {
+		   if (from >= to) {
+			   return false;
+		   }
+		   action.accept(advance().key);
+		   return true;
+	   }
+
+	   @Override
+	   public void forEachRemaining(IntConsumer action) {
+		   while (from < to) {
+			   action.accept(advance().key);
+		   }
+	   }
+
+	   @Override
+	   public Comparator<? super Integer> getComparator() {
+		   return null; //natural order
+	   }
+   }
+
+
+   /**
+    * EntrySpliterator yields the nodes of a range of ranks, in key order
+    */
+   private final class EntrySpliterator extends RankSpliterator implements Spliterator<IAVLNode> {
+
+	   EntrySpliterator(int from, int to) {
+		   super(from, to);
+	   }
+
+	   @Override
+	   public Spliterator<IAVLNode> trySplit() {
+		   return (to - from < 2) ? null : splitInto(new EntrySpliterator(from, (from + to) >>> 1));
+	   }
+
+	   @Override
+	   public boolean tryAdvance(Consumer<? super IAVLNode> action) {
+		   if (from >= to) {
+			   return false;
+		   }
+		   action.accept(advance());
+		   return true;
+	   }
+
+	   @Override
+	   public void forEachRemaining(Consumer<? super IAVLNode> action) {
+		   while (from < to) {
+			   action.accept(advance());
+		   }
+	   }
+
+	   @Override
+	   public Comparator<? super IAVLNode> getComparator() {
+		   return Comparator.comparingInt(IAVLNode::getKey);
+	   }
+   }
+
+
+   /**
+    * public interface Aggregate
+    *
+    * A value computed from every item and combined over ranges of keys. A tree created with
+    * new AVLTree(aggregate) keeps the combined value of every subtree up to date through
+    * inserts, deletes, rotations, split and join. combine must be associative, with
+    * identity() as its neutral element; items are combined in key order, so it need not
+    * be commutative.
+    */
+   public interface Aggregate {
+	   long identity();
+	   long valueOf(int key, String info);
+	   long combine(long left, long right);
+   }
+
+
+   /**
+    * BuiltInAggregate implements COUNT, SUM, MIN and MAX
+    */
+   private static final class BuiltInAggregate implements Aggregate {
+	   private final int operation;
+
+	   BuiltInAggregate(int operation) {
+		   this.operation = operation;
+	   }
+
+	   @Override
+	   public long identity() {
+		   switch (operation) {
+			   case AGGREGATE_MIN:
+				   return Long.MAX_VALUE;
+			   case AGGREGATE_MAX:
+				   return Long.MIN_VALUE;
+			   default:
+				   return 0;
+		   }
+	   }
+
+	   @Override
+	   public long valueOf(int key, String info) {
+		   if (operation == AGGREGATE_COUNT) {
+			   return 1;
 		   }
-	 }	   
+		   return (info == null) ? identity() : Long.parseLong(info);
+	   }
+
+	   @Override
+	   public long combine(long left, long right) {
+		   switch (operation) {
+			   case AGGREGATE_MIN:
+				   return Math.min(left, right);
+			   case AGGREGATE_MAX:
+				   return Math.max(left, right);
+			   default:
+				   return left + right;
+		   }
+	   }
+   }
 
    
    /***************************************IAVLNode
@@ -964,9 +2384,9 @@ public class AVLTree {
    * This class can and must be modified.
    * (It must implement IAVLNode)
    */
-  public class AVLNode implements IAVLNode{
+  public static class AVLNode implements IAVLNode{
 
-      Integer key;
+      int key;
       String value;
       int size;
       int rank;
@@ -976,7 +2396,7 @@ public class AVLTree {
       
   
 	      /**
-	        first constructor 
+	        first constructor, used once for the shared EXTERNAL_NODE
 	        Complexity : O(1) 
 	       */
 	     private AVLNode() { 
@@ -993,18 +2413,6 @@ public class AVLTree {
 	        second constructor 
 	        Complexity : O(1) 
 	       */
-	     private AVLNode(AVLNode node) {
-				this.key=-1;
-				this.size=0;
-				this.rank=-1;
-				this.parent=node;
-				this.left=null;
-				this.right=null;}
-	     
-	      /**
-	        third constructor 
-	        Complexity : O(1) 
-	       */
 	    private AVLNode(int key, String value, AVLNode parent) {
 	        this.key = key;
 	        this.value = value;
@@ -1016,28 +2424,6 @@ public class AVLTree {
 	    }
 
 
-	      /**
-        fourth constructor 
-        Complexity : O(1) 
-       */
-	      private AVLNode(AVLNode right, AVLNode left,int key, String value) {
-				this.right=right;
-				this.left=left;
-				this.key=key;
-				this.value=value;
-				this.size=1;
-				this.rank=0;
-				if (this.left==null)
-					this.left=new AVLNode(this);
-				if(this.right==null)
-					this.right=new AVLNode(this);
-				if (!this.left.isRealNode())
-					this.left=new AVLNode(this);
-				if (!this.right.isRealNode())
-					this.right=new AVLNode(this);
-
-				this.parent=null;
-			}
 	      
 	      
 	    /**
@@ -1064,6 +2450,7 @@ public class AVLTree {
          */
 		public void setLeft(IAVLNode node)
 		{
+			requireMutable();
 			left = (AVLNode) node;
 		}
 		
@@ -1083,6 +2470,7 @@ public class AVLTree {
          */
 		public void setRight(IAVLNode node)
 		{
+			requireMutable();
 			right = (AVLNode) node; 
 		}
 		
@@ -1102,6 +2490,7 @@ public class AVLTree {
          */
 		public void setParent(IAVLNode node)
 		{
+			requireMutable();
 			parent = (AVLNode) node; 
 		}
 		
@@ -1132,6 +2521,7 @@ public class AVLTree {
          */
 		public void setHeight(int height)
 		{
+			requireMutable();
 			rank = height; 
 		}
     
@@ -1147,56 +2537,28 @@ public class AVLTree {
     
     
     //***************************Extra PRIVATE Functions
-		private Edge TypesOfEdges() {
-			int EdgeIsRight = (rank - right.rank);//rank difference between current node and its right son
-			int EdgeIsLeft = (rank - left.rank); //rank difference between current node and its left son
-			if (EdgeIsLeft == 1) {//1-0
-				if (EdgeIsRight == 0) {
-				return Edge.Type10;
-			}}
-			if (EdgeIsLeft == 0) {//0-1
-				if (EdgeIsRight == 1) {
-				return Edge.Type01;
-			}}
-			if (EdgeIsLeft == 1) {//1-1
-				if ( EdgeIsRight == 1) {
-				return Edge.Type11;
-			}}
-			if (EdgeIsLeft == 2) {//2-0
-				if(EdgeIsRight == 0) {
-				return Edge.Type20;
-			}}
-			if (EdgeIsLeft == 0) {//0-2
-				if( EdgeIsRight == 2) {
-				return Edge.Type02;
-			}}
-			if (EdgeIsLeft == 1) {//1-2
-				if( EdgeIsRight == 2) {
-				return Edge.Type12;
-			}}
-			if (EdgeIsLeft == 2) {//2-1
-				if( EdgeIsRight == 1) {
-				return Edge.Type21;
-			}}
-			
-			
-			//added cases at deletion
-			if (EdgeIsLeft == 2) {//2-2
-				if( EdgeIsRight == 2) {
-				return Edge.Type22;
-			}}
-			if (EdgeIsLeft == 1) {//1-3
-				if( EdgeIsRight == 3) {
-				return Edge.Type13;
-			}}
-			
-			if (EdgeIsLeft == 3) {//3-1
-				if( EdgeIsRight == 1) {
-				return Edge.Type31;
-			}}			
+		/**
+		 * the setters of IAVLNode must not reach EXTERNAL_NODE: it is shared by every tree
+		 * Complexity : O(1)
+		 */
+		private void requireMutable() {
+			if (this == EXTERNAL_NODE) {
+				throw new IllegalStateException("the virtual node is shared by every tree and cannot be changed");
+			}
+		}
 
-			
-			return Edge.whatever;
+		/**
+		 * returns the rank differences to the left and right sons encoded as left << 2 | right,
+		 * or EDGES_OTHER if either is outside 0..3, so callers can switch on one int
+		 * Complexity : O(1)
+		 */
+		private int TypesOfEdges() {
+			int EdgeIsLeft = (rank - left.rank); //rank difference between current node and its left son
+			int EdgeIsRight = (rank - right.rank);//rank difference between current node and its right son
+			if (((EdgeIsLeft | EdgeIsRight) & ~3) != 0) {
+				return EDGES_OTHER;
+			}
+			return EdgeIsLeft << 2 | EdgeIsRight;
 		}
     
  
@@ -1239,4 +2601,18 @@ public class AVLTree {
             }
     }  
 }
+
+
+  /**
+   * AggregateNode is the node of a tree that keeps an aggregate: item is the value of its
+   * own item, total the aggregate of its whole subtree
+   */
+  static final class AggregateNode extends AVLNode {
+	  long item;
+	  long total;
+
+	  private AggregateNode(int key, String value, AVLNode parent) {
+		  super(key, value, parent);
+	  }
+  }
 }
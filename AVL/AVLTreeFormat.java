@@ -0,0 +1,333 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ *
+ * AVLTreeFormat
+ *
+ * The streaming snapshot format written by AVLTree.writeTo and read by AVLTree.readFrom:
+ *   magic    4 bytes, "AVLS"
+ *   count    varint, the number of items
+ *   items    in key order, each a key followed by its info
+ * The first key is stored zigzag encoded; every later key as its (positive) difference
+ * from the key before it. An info is its UTF-8 length plus one (0 stands for null)
+ * followed by the UTF-8 bytes. Varints hold 7 bits per byte, low bits first, with the
+ * high bit set on every byte but the last.
+ * Writer and Reader each go through one fixed buffer, so a snapshot of any size is
+ * streamed with constant extra memory.
+ *
+ */
+
+final class AVLTreeFormat {
+
+    final static int MAGIC = 0x41564c53; // "AVLS"
+    final static int BUFFER_BYTES = 1 << 16;
+    final static int MAX_VARINT_BYTES = 10;
+
+    private AVLTreeFormat() {
+    }
+
+
+    /**
+     * Writer
+     *
+     * Encodes a header and then items, in key order, to an OutputStream or a channel.
+     */
+    static final class Writer {
+        private final OutputStream out;
+        private final WritableByteChannel channel;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int position;
+        private long items;
+        private int previous; // the last key written
+
+        Writer(OutputStream out) {
+            this.out = out;
+            this.channel = null;
+        }
+
+        Writer(WritableByteChannel channel) {
+            this.out = null;
+            this.channel = channel;
+        }
+
+        /**
+         * writes the magic number and the number of items that follow
+         * Complexity : O(1)
+         */
+        void writeHeader(int count) throws IOException {
+            buffer[position++] = (byte) (MAGIC >>> 24);
+            buffer[position++] = (byte) (MAGIC >>> 16);
+            buffer[position++] = (byte) (MAGIC >>> 8);
+            buffer[position++] = (byte) MAGIC;
+            writeVarint(count);
+        }
+
+        /**
+         * writes one item; keys must come in increasing order
+         * Complexity : O(length of value)
+         */
+        void writeItem(int key, String value) throws IOException {
+            if (position > BUFFER_BYTES - 2 * MAX_VARINT_BYTES) {
+                flushBuffer();
+            }
+            if (items++ == 0) {
+                writeVarint(((key << 1) ^ (key >> 31)) & 0xFFFFFFFFL);
+            }
+            else {
+                writeVarint((long) key - previous);
+            }
+            previous = key;
+            if (value == null) {
+                buffer[position++] = 0;
+                return;
+            }
+            writeVarint(utf8Length(value) + 1L);
+            writeUtf8(value);
+        }
+
+        /**
+         * writes out whatever is still buffered (and flushes the stream, if there is one)
+         * Complexity : O(1)
+         */
+        void finish() throws IOException {
+            flushBuffer();
+            if (out != null) {
+                out.flush();
+            }
+        }
+
+        private void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * encodes s the way String.getBytes(UTF_8) does (an unpaired surrogate becomes '?'),
+         * straight into the buffer
+         */
+        private void writeUtf8(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++) {
+                if (position > BUFFER_BYTES - 4) {
+                    flushBuffer();
+                }
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                }
+                else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | c >> 6);
+                    buffer[position++] = (byte) (0x80 | c & 0x3F);
+                }
+                else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int code = Character.toCodePoint(c, s.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | code >> 18);
+                    buffer[position++] = (byte) (0x80 | code >> 12 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | code >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | code & 0x3F);
+                }
+                else if (Character.isSurrogate(c)) {
+                    buffer[position++] = '?';
+                }
+                else {
+                    buffer[position++] = (byte) (0xE0 | c >> 12);
+                    buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    buffer[position++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+        }
+
+        private static int utf8Length(String s) {
+            int length = s.length();
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 0x800 && Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    length += 2; // two chars, four bytes
+                    i++;
+                }
+                else if (c >= 0x800 && !Character.isSurrogate(c)) {
+                    length += 2;
+                }
+                else if (c >= 0x80 && c < 0x800) {
+                    length += 1;
+                }
+            }
+            return length;
+        }
+
+        private void flushBuffer() throws IOException {
+            if (out != null) {
+                out.write(buffer, 0, position);
+            }
+            else {
+                ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, position);
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            }
+            position = 0;
+        }
+    }
+
+
+    /**
+     * Reader
+     *
+     * Decodes a header and then items from an InputStream or a channel. It reads ahead,
+     * so bytes after the snapshot may be consumed from the source.
+     */
+    static final class Reader {
+        private final InputStream in;
+        private final ReadableByteChannel channel;
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int position;
+        private int limit;
+        private long items;
+        private int previous; // the last key read
+
+        Reader(InputStream in) {
+            this.in = in;
+            this.channel = null;
+        }
+
+        Reader(ReadableByteChannel channel) {
+            this.in = null;
+            this.channel = channel;
+        }
+
+        /**
+         * checks the magic number and returns the number of items that follow
+         * Complexity : O(1)
+         */
+        int readHeader() throws IOException {
+            require(4);
+            int magic = (buffer[position] & 0xFF) << 24 | (buffer[position + 1] & 0xFF) << 16
+                    | (buffer[position + 2] & 0xFF) << 8 | (buffer[position + 3] & 0xFF);
+            position += 4;
+            if (magic != MAGIC) {
+                throw new IOException("not an AVL tree snapshot");
+            }
+            long count = readVarint();
+            if (count > Integer.MAX_VALUE) {
+                throw new IOException("corrupt AVL tree snapshot: " + count + " items");
+            }
+            return (int) count;
+        }
+
+        /**
+         * returns the key of the next item
+         * Complexity : O(1)
+         */
+        int readKey() throws IOException {
+            long raw = readVarint();
+            long key;
+            if (items++ == 0) {
+                if (raw > 0xFFFFFFFFL) {
+                    throw new IOException("corrupt AVL tree snapshot: first key out of range");
+                }
+                int zigzag = (int) raw;
+                key = (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            else {
+                key = previous + raw;
+                if (raw <= 0 || key > Integer.MAX_VALUE) {
+                    throw new IOException("corrupt AVL tree snapshot: keys not increasing after " + previous);
+                }
+            }
+            previous = (int) key;
+            return previous;
+        }
+
+        /**
+         * returns the info of the item whose key was just read
+         * Complexity : O(length of the info)
+         */
+        String readValue() throws IOException {
+            long encoded = readVarint();
+            if (encoded == 0) {
+                return null;
+            }
+            if (encoded - 1 > Integer.MAX_VALUE) {
+                throw new IOException("corrupt AVL tree snapshot: info of " + (encoded - 1) + " bytes");
+            }
+            int length = (int) (encoded - 1);
+            if (length <= BUFFER_BYTES) {
+                require(length);
+                String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+                return value;
+            }
+            byte[] bytes = new byte[length]; // longer than the buffer: read it whole
+            int copied = limit - position;
+            System.arraycopy(buffer, position, bytes, 0, copied);
+            position = limit;
+            while (copied < length) {
+                int read = in != null ? in.read(bytes, copied, length - copied)
+                        : channel.read(ByteBuffer.wrap(bytes, copied, length - copied));
+                if (read < 0) {
+                    throw new EOFException("truncated AVL tree snapshot");
+                }
+                copied += read;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private long readVarint() throws IOException {
+            if (limit - position < MAX_VARINT_BYTES) {
+                requireVarint();
+            }
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("corrupt AVL tree snapshot: varint too long");
+        }
+
+        /**
+         * near the end of the source a varint may be shorter than MAX_VARINT_BYTES: makes
+         * sure the bytes up to its last one are buffered
+         */
+        private void requireVarint() throws IOException {
+            for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+                require(i + 1);
+                if (buffer[position + i] >= 0) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * makes at least count (at most BUFFER_BYTES) bytes available from position on
+         */
+        private void require(int count) throws IOException {
+            if (limit - position >= count) {
+                return;
+            }
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < count) {
+                int read = in != null ? in.read(buffer, limit, BUFFER_BYTES - limit)
+                        : channel.read(ByteBuffer.wrap(buffer, limit, BUFFER_BYTES - limit));
+                if (read < 0) {
+                    throw new EOFException("truncated AVL tree snapshot");
+                }
+                limit += read;
+            }
+        }
+    }
+}
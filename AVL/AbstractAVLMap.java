@@ -0,0 +1,323 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *
+ * AbstractAVLMap
+ *
+ * The rebalancing core shared by IntAVLMap, LongAVLMap, DoubleAVLMap and AVLMap.
+ * Nothing here compares keys: a subclass descends the tree with its own key type
+ * and comparison, then calls attach() or unlink() to change the shape, and this
+ * class restores balance, rank and size on the way back to the root.
+ *
+ * A node's rank is its height (a leaf has rank 0, a missing son counts as -1)
+ * and its size is the number of nodes in its subtree. Subclasses that keep more
+ * per-node data override update().
+ *
+ */
+
+public abstract class AbstractAVLMap<V, N extends AbstractAVLMap.Node<V, N>> {
+
+    N root;
+
+
+    /**
+     * public int size()
+     *
+     * Returns the number of entries in the map.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(root);
+    }
+
+
+    /**
+     * public boolean isEmpty()
+     * returns true if and only if the map is empty
+     *
+     * Complexity : O(1)
+     */
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+
+    /**
+     * public void clear()
+     * removes all entries
+     *
+     * Complexity : O(1)
+     */
+    public void clear() {
+        root = null;
+    }
+
+
+    /**
+     * public List<V> values()
+     *
+     * Returns the values of the map in key order.
+     * Complexity : O(n)
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>(size());
+        for (N node = firstNode(); node != null; node = successor(node)) {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+
+    /**
+     * recomputes the rank and size of node from its sons, which are already up to date
+     * Complexity : O(1)
+     */
+    protected void update(N node) {
+        node.rank = Math.max(rank(node.left), rank(node.right)) + 1;
+        node.size = size(node.left) + size(node.right) + 1;
+    }
+
+
+    /**
+     * hangs the new leaf fresh under parent (as its left son if left is true), or makes
+     * it the root if parent is null, and rebalances
+     * Complexity : O(log(n))
+     */
+    final void attach(N parent, N fresh, boolean left) {
+        fresh.parent = parent;
+        if (parent == null) {
+            root = fresh;
+        }
+        else if (left) {
+            parent.left = fresh;
+        }
+        else {
+            parent.right = fresh;
+        }
+        update(fresh);
+        rebalance(parent);
+    }
+
+
+    /**
+     * removes node from the tree and rebalances. A node with two sons is replaced by
+     * relinking its successor into its place, so keys are never copied between nodes.
+     * Complexity : O(log(n))
+     */
+    final void unlink(N node) {
+        N start;
+        if (node.left == null || node.right == null) {
+            start = node.parent;
+            replace(node, node.left != null ? node.left : node.right);
+        }
+        else {
+            N successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            if (successor.parent == node) {
+                start = successor;
+            }
+            else {
+                start = successor.parent;
+                replace(successor, successor.right);
+                successor.right = node.right;
+                successor.right.parent = successor;
+            }
+            replace(node, successor);
+            successor.left = node.left;
+            successor.left.parent = successor;
+        }
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        rebalance(start);
+    }
+
+
+    /**
+     * walks from node to the root, updating every node and rotating where the ranks of
+     * two brothers differ by two
+     * Complexity : O(log(n))
+     */
+    final void rebalance(N node) {
+        while (node != null) {
+            int balance = rank(node.left) - rank(node.right);
+            if (balance > 1) {
+                if (rank(node.left.left) < rank(node.left.right)) {
+                    rotateLeft(node.left);
+                }
+                node = rotateRight(node);
+            }
+            else if (balance < -1) {
+                if (rank(node.right.right) < rank(node.right.left)) {
+                    rotateRight(node.right);
+                }
+                node = rotateLeft(node);
+            }
+            else {
+                update(node);
+            }
+            node = node.parent;
+        }
+    }
+
+
+    /**
+     * rotates the subtree of a to the right and returns its new root
+     * Complexity : O(1)
+     */
+    private N rotateRight(N a) {
+        N b = a.left;
+        a.left = b.right;
+        if (b.right != null) {
+            b.right.parent = a;
+        }
+        replace(a, b);
+        b.right = a;
+        a.parent = b;
+        update(a);
+        update(b);
+        return b;
+    }
+
+
+    /**
+     * rotates the subtree of a to the left and returns its new root
+     * Complexity : O(1)
+     */
+    private N rotateLeft(N a) {
+        N b = a.right;
+        a.right = b.left;
+        if (b.left != null) {
+            b.left.parent = a;
+        }
+        replace(a, b);
+        b.left = a;
+        a.parent = b;
+        update(a);
+        update(b);
+        return b;
+    }
+
+
+    /**
+     * puts child (possibly null) where node hangs from its parent
+     * Complexity : O(1)
+     */
+    private void replace(N node, N child) {
+        N parent = node.parent;
+        if (child != null) {
+            child.parent = parent;
+        }
+        if (parent == null) {
+            root = child;
+        }
+        else if (parent.left == node) {
+            parent.left = child;
+        }
+        else {
+            parent.right = child;
+        }
+    }
+
+
+    /**
+     * returns the node with the smallest key, or null if the map is empty
+     * Complexity : O(log(n))
+     */
+    final N firstNode() {
+        N node = root;
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+
+    /**
+     * returns the node with the largest key, or null if the map is empty
+     * Complexity : O(log(n))
+     */
+    final N lastNode() {
+        N node = root;
+        if (node != null) {
+            while (node.right != null) {
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+
+    /**
+     * returns the node following node in key order, or null
+     * Complexity : O(log(n)), amortized O(1) over a full walk
+     */
+    final N successor(N node) {
+        if (node.right != null) {
+            node = node.right;
+            while (node.left != null) {
+                node = node.left;
+            }
+            return node;
+        }
+        while (node.parent != null && node.parent.right == node) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+
+    /**
+     * returns the node of rank i (the i-th smallest key, from 0)
+     * throws IndexOutOfBoundsException if i is not in [0, size())
+     * Complexity : O(log(n))
+     */
+    final N selectNode(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("index " + i + " for a map of size " + size());
+        }
+        N node = root;
+        while (i != size(node.left)) {
+            if (i < size(node.left)) {
+                node = node.left;
+            }
+            else {
+                i -= size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+    static int rank(Node<?, ?> node) {
+        return node == null ? -1 : node.rank;
+    }
+
+    static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+
+    /**
+     * Node
+     *
+     * The shape of a map entry; subclasses add the key.
+     */
+    abstract static class Node<V, N extends Node<V, N>> {
+        V value;
+        N left;
+        N right;
+        N parent;
+        int rank;
+        int size;
+
+        Node(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,913 @@
+import java.util.Arrays;
+
+
+/**
+ *
+ * ArrayAVLTree
+ *
+ * An AVL Tree with distinct integer keys and info, offering the same public
+ * operations as AVLTree, whose nodes live in parallel arrays instead of
+ * separate heap objects. A node is an int index into a Pool; index 0 is the
+ * shared virtual node (rank -1, size 0). Freed slots are recycled through a
+ * free list, so insert/delete/search never allocate once the pool is large enough.
+ *
+ * Trees produced by split share the pool of the tree they came from.
+ *
+ */
+
+public class ArrayAVLTree {
+
+    final static int NIL = 0;
+    final static int ZERO_REBALANCES = 0;
+    final static int ONE_REBALANCE = 1;
+    final static int TWO_REBALANCES = 2;
+    final static int THREE_REBALANCES = 3;
+    final static int Five_REBALANCES = 5;
+    final static int SIX_REBALANCES = 6;
+
+    final Pool pool;
+    int Root;
+    int Min;
+    int Max;
+
+    /**
+     * creates an empty tree with a small pool
+     */
+    public ArrayAVLTree() {
+        this(16);
+    }
+
+    /**
+     * creates an empty tree whose pool can hold capacity nodes before growing
+     */
+    public ArrayAVLTree(int capacity) {
+        this(new Pool(capacity));
+    }
+
+    private ArrayAVLTree(Pool pool) {
+        this.pool = pool;
+        Root = NIL;
+        Min = NIL;
+        Max = NIL;
+    }
+
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     *
+     * Complexity : O(1)
+     */
+    public boolean empty() {
+        return Root == NIL;
+    }
+
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     *
+     * Complexity : O(log(n))
+     */
+    public String search(int k) {
+        int node = find(k);
+        return node == NIL ? null : pool.values[node];
+    }
+
+
+    /**
+     * returns the index of the node with key k, or NIL if there is none
+     * Complexity : O(log(n))
+     */
+    private int find(int k) {
+        int[] keys = pool.keys;
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int node = Root;
+        while (node != NIL) {
+            int key = keys[node];
+            if (k == key) {
+                return node;
+            }
+            node = k < key ? lefts[node] : rights[node];
+        }
+        return NIL;
+    }
+
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the AVL tree.
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if an item with key k already exists in the tree.
+     * Complexity : O(log(n))
+     */
+    public int insert(int k, String i) {
+        int parent = NIL;
+        int node = Root;
+        int[] keys = pool.keys;
+        while (node != NIL) {
+            if (k == keys[node]) {
+                return -1;
+            }
+            parent = node;
+            node = k < keys[node] ? pool.lefts[node] : pool.rights[node];
+        }
+        int fresh = pool.allocate(k, i, parent);
+        keys = pool.keys;
+        if (parent == NIL) {
+            Root = fresh;
+            Min = fresh;
+            Max = fresh;
+            return ZERO_REBALANCES;
+        }
+        if (k < keys[parent]) {
+            pool.lefts[parent] = fresh;
+        }
+        else {
+            pool.rights[parent] = fresh;
+        }
+        if (k < keys[Min]) {
+            Min = fresh;
+        }
+        if (k > keys[Max]) {
+            Max = fresh;
+        }
+        for (int p = parent; p != NIL; p = pool.parents[p]) {
+            pool.sizes[p]++;
+        }
+        return insertReBalance(parent);
+    }
+
+
+    /**
+     * insertReBalance climbs from point promoting or rotating until the tree is valid
+     * Complexity : O(log(n))
+     */
+    private int insertReBalance(int point) {
+        int[] ranks = pool.ranks;
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int count = ZERO_REBALANCES;
+        while (point != NIL) {
+            int leftEdge = ranks[point] - ranks[lefts[point]];
+            int rightEdge = ranks[point] - ranks[rights[point]];
+            if ((leftEdge == 0 && rightEdge == 1) || (leftEdge == 1 && rightEdge == 0)) {
+                ranks[point]++;
+                count += ONE_REBALANCE;
+                point = pool.parents[point];
+            }
+            else if (leftEdge == 0 && rightEdge == 2) {
+                int son = lefts[point];
+                if (ranks[son] - ranks[lefts[son]] == 1) {
+                    rightRotate(point);
+                    ranks[point]--;
+                    return count + TWO_REBALANCES;
+                }
+                int freshRoot = rights[son];
+                leftRotate(son);
+                rightRotate(point);
+                ranks[freshRoot]++;
+                ranks[point]--;
+                ranks[son]--;
+                return count + Five_REBALANCES;
+            }
+            else if (leftEdge == 2 && rightEdge == 0) {
+                int son = rights[point];
+                if (ranks[son] - ranks[rights[son]] == 1) {
+                    leftRotate(point);
+                    ranks[point]--;
+                    return count + TWO_REBALANCES;
+                }
+                int freshRoot = lefts[son];
+                rightRotate(son);
+                leftRotate(point);
+                ranks[freshRoot]++;
+                ranks[point]--;
+                ranks[son]--;
+                return count + Five_REBALANCES;
+            }
+            else {
+                return count;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the binary tree, if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if an item with key k was not found in the tree.
+     * Complexity : O(log(n))
+     */
+    public int delete(int k) {
+        int node = find(k);
+        if (node == NIL) {
+            return -1;
+        }
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int[] parents = pool.parents;
+        int removed = node;
+        if (lefts[node] != NIL && rights[node] != NIL) { // internal node: take the successor's item
+            removed = rights[node];
+            while (lefts[removed] != NIL) {
+                removed = lefts[removed];
+            }
+            pool.keys[node] = pool.keys[removed];
+            pool.values[node] = pool.values[removed];
+        }
+        int son = lefts[removed] != NIL ? lefts[removed] : rights[removed];
+        int parent = parents[removed];
+        replaceChild(parent, removed, son);
+        boolean minMaxChanged = removed == Min || removed == Max || node == Min || node == Max;
+        pool.release(removed);
+        for (int p = parent; p != NIL; p = parents[p]) {
+            pool.sizes[p]--;
+        }
+        if (minMaxChanged) {
+            resetMinMax();
+        }
+        return deleteReBalance(parent);
+    }
+
+
+    /**
+     * deleteReBalance climbs from point demoting or rotating until the tree is valid
+     * Complexity : O(log(n))
+     */
+    private int deleteReBalance(int point) {
+        int[] ranks = pool.ranks;
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int count = ZERO_REBALANCES;
+        while (point != NIL) {
+            int leftEdge = ranks[point] - ranks[lefts[point]];
+            int rightEdge = ranks[point] - ranks[rights[point]];
+            if (leftEdge == 2 && rightEdge == 2) {
+                ranks[point]--;
+                count += ONE_REBALANCE;
+                point = pool.parents[point];
+            }
+            else if (leftEdge == 3 && rightEdge == 1) {
+                int son = rights[point];
+                int sonLeft = ranks[son] - ranks[lefts[son]];
+                int sonRight = ranks[son] - ranks[rights[son]];
+                if (sonLeft == 1 && sonRight == 1) {
+                    leftRotate(point);
+                    ranks[point]--;
+                    ranks[son]++;
+                    return count + THREE_REBALANCES;
+                }
+                if (sonLeft == 2) {
+                    leftRotate(point);
+                    ranks[point] -= 2;
+                    count += THREE_REBALANCES;
+                    point = pool.parents[son];
+                }
+                else {
+                    int freshRoot = lefts[son];
+                    rightRotate(son);
+                    leftRotate(point);
+                    ranks[freshRoot]++;
+                    ranks[point] -= 2;
+                    ranks[son]--;
+                    count += SIX_REBALANCES;
+                    point = pool.parents[freshRoot];
+                }
+            }
+            else if (leftEdge == 1 && rightEdge == 3) {
+                int son = lefts[point];
+                int sonLeft = ranks[son] - ranks[lefts[son]];
+                int sonRight = ranks[son] - ranks[rights[son]];
+                if (sonLeft == 1 && sonRight == 1) {
+                    rightRotate(point);
+                    ranks[point]--;
+                    ranks[son]++;
+                    return count + THREE_REBALANCES;
+                }
+                if (sonRight == 2) {
+                    rightRotate(point);
+                    ranks[point] -= 2;
+                    count += THREE_REBALANCES;
+                    point = pool.parents[son];
+                }
+                else {
+                    int freshRoot = rights[son];
+                    leftRotate(son);
+                    rightRotate(point);
+                    ranks[freshRoot]++;
+                    ranks[point] -= 2;
+                    ranks[son]--;
+                    count += SIX_REBALANCES;
+                    point = pool.parents[freshRoot];
+                }
+            }
+            else {
+                return count;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * makes son take the place of child under parent (or the root if parent is NIL)
+     * Complexity : O(1)
+     */
+    private void replaceChild(int parent, int child, int son) {
+        if (parent == NIL) {
+            Root = son;
+        }
+        else if (pool.lefts[parent] == child) {
+            pool.lefts[parent] = son;
+        }
+        else {
+            pool.rights[parent] = son;
+        }
+        if (son != NIL) {
+            pool.parents[son] = parent;
+        }
+    }
+
+
+    /**
+     * rightRotate rotates the subtree of the given node to the right; ranks are left to the caller
+     * Complexity : O(1)
+     */
+    private void rightRotate(int a) {
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int[] parents = pool.parents;
+        int[] sizes = pool.sizes;
+        int b = lefts[a];
+        int e = rights[b];
+        replaceChild(parents[a], a, b);
+        lefts[a] = e;
+        if (e != NIL) {
+            parents[e] = a;
+        }
+        rights[b] = a;
+        parents[a] = b;
+        sizes[a] = 1 + sizes[lefts[a]] + sizes[rights[a]];
+        sizes[b] = 1 + sizes[lefts[b]] + sizes[a];
+    }
+
+
+    /**
+     * leftRotate rotates the subtree of the given node to the left; ranks are left to the caller
+     * Complexity : O(1)
+     */
+    private void leftRotate(int a) {
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int[] parents = pool.parents;
+        int[] sizes = pool.sizes;
+        int b = rights[a];
+        int d = lefts[b];
+        replaceChild(parents[a], a, b);
+        rights[a] = d;
+        if (d != NIL) {
+            parents[d] = a;
+        }
+        lefts[b] = a;
+        parents[a] = b;
+        sizes[a] = 1 + sizes[lefts[a]] + sizes[rights[a]];
+        sizes[b] = 1 + sizes[a] + sizes[rights[b]];
+    }
+
+
+    /**
+     * public String min()
+     *
+     * Complexity : O(1)
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min() {
+        return pool.values[Min];
+    }
+
+
+    /**
+     * public String max()
+     *
+     * Complexity : O(1)
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max() {
+        return pool.values[Max];
+    }
+
+
+    /**
+     * recomputes Min and Max by walking the outer spines of the tree
+     * Complexity : O(log(n))
+     */
+    private void resetMinMax() {
+        Min = Root;
+        Max = Root;
+        if (Root == NIL) {
+            return;
+        }
+        while (pool.lefts[Min] != NIL) {
+            Min = pool.lefts[Min];
+        }
+        while (pool.rights[Max] != NIL) {
+            Max = pool.rights[Max];
+        }
+    }
+
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        int i = 0;
+        for (int node = Min; node != NIL; node = successor(node)) {
+            arr[i++] = pool.keys[node];
+        }
+        return arr;
+    }
+
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[size()];
+        int i = 0;
+        for (int node = Min; node != NIL; node = successor(node)) {
+            arr[i++] = pool.values[node];
+        }
+        return arr;
+    }
+
+
+    /**
+     * returns the in-order successor of node, or NIL if node holds the largest key
+     * Complexity : O(log(n)), amortized O(1) over a full traversal
+     */
+    private int successor(int node) {
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int[] parents = pool.parents;
+        if (rights[node] != NIL) {
+            node = rights[node];
+            while (lefts[node] != NIL) {
+                node = lefts[node];
+            }
+            return node;
+        }
+        int parent = parents[node];
+        while (parent != NIL && rights[parent] == node) {
+            node = parent;
+            parent = parents[node];
+        }
+        return parent;
+    }
+
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return pool.sizes[Root];
+    }
+
+
+    /**
+     * public IAVLNode getRoot()
+     * Complexity: O(1)
+     * Returns a view of the root node, or null if the tree is empty.
+     * Views are created on demand, so only callers of getRoot pay for node objects.
+     */
+    public AVLTree.IAVLNode getRoot() {
+        if (empty()) {
+            return null;
+        }
+        return new NodeView(pool, Root);
+    }
+
+
+    /**
+     * public ArrayAVLTree[] split(int x)
+     *
+     * splits the tree into 2 trees according to the key x.
+     * Returns an array [t1, t2] with two AVL trees. keys(t1) < x < keys(t2).
+     * The node of x is released and this tree is left empty; both results share its pool.
+     * precondition: none (if x is not in the tree the split simply falls between its neighbours)
+     * Complexity: O(log(n))
+     */
+    public ArrayAVLTree[] split(int x) {
+        int parent = NIL;
+        int node = Root;
+        while (node != NIL && pool.keys[node] != x) {
+            parent = node;
+            node = x < pool.keys[node] ? pool.lefts[node] : pool.rights[node];
+        }
+        int leftRoot = NIL;
+        int rightRoot = NIL;
+        if (node != NIL) {
+            leftRoot = detach(pool.lefts[node]);
+            rightRoot = detach(pool.rights[node]);
+            parent = pool.parents[node];
+        }
+        while (parent != NIL) {
+            int grandParent = pool.parents[parent];
+            if (x < pool.keys[parent]) { //parent and its right subtree are bigger than x
+                rightRoot = joinNodes(rightRoot, parent, detach(pool.rights[parent]));
+            }
+            else {
+                leftRoot = joinNodes(detach(pool.lefts[parent]), parent, leftRoot);
+            }
+            parent = grandParent;
+        }
+        if (node != NIL) {
+            pool.release(node);
+        }
+        Root = NIL;
+        Min = NIL;
+        Max = NIL;
+        ArrayAVLTree[] trees = new ArrayAVLTree[2];
+        trees[0] = new ArrayAVLTree(pool);
+        trees[0].Root = leftRoot;
+        trees[0].resetMinMax();
+        trees[1] = new ArrayAVLTree(pool);
+        trees[1].Root = rightRoot;
+        trees[1].resetMinMax();
+        return trees;
+    }
+
+
+    /**
+     * public int join(IAVLNode x, ArrayAVLTree t)
+     *
+     * joins t and x with the tree. Only the key and info of x are used.
+     * Returns the complexity of the operation (|tree.rank - t.rank| + 1).
+     * If t uses a different pool its nodes are copied into this tree's pool first and their
+     * slots go back to the free list of t's pool; t is left empty.
+     * precondition: keys(x,t) < keys() or keys(x,t) > keys(). t/tree might be empty (rank = -1).
+     * Complexity: O(log(n)) when t shares this tree's pool
+     */
+    public int join(AVLTree.IAVLNode x, ArrayAVLTree t) {
+        int otherRoot = t.Root;
+        if (t.pool != pool) {
+            otherRoot = copyFrom(t.pool, t.Root, NIL);
+            releaseSubtree(t.pool, t.Root);
+        }
+        int complexity = Math.abs(pool.ranks[Root] - pool.ranks[otherRoot]) + 1;
+        int middle = pool.allocate(x.getKey(), x.getValue(), NIL);
+        if (otherRoot != NIL && pool.keys[otherRoot] < x.getKey()) {
+            Root = joinNodes(otherRoot, middle, Root);
+        }
+        else if (Root != NIL && pool.keys[Root] > x.getKey()) {
+            Root = joinNodes(otherRoot, middle, Root);
+        }
+        else {
+            Root = joinNodes(Root, middle, otherRoot);
+        }
+        resetMinMax();
+        t.Root = NIL;
+        t.Min = NIL;
+        t.Max = NIL;
+        return complexity;
+    }
+
+
+    /**
+     * copies the subtree rooted at node of another pool into this pool, returning the copy
+     * Complexity: O(size of the subtree)
+     */
+    private int copyFrom(Pool other, int node, int parent) {
+        if (node == NIL) {
+            return NIL;
+        }
+        int copy = pool.allocate(other.keys[node], other.values[node], parent);
+        int left = copyFrom(other, other.lefts[node], copy);
+        int right = copyFrom(other, other.rights[node], copy);
+        pool.lefts[copy] = left;
+        pool.rights[copy] = right;
+        pool.ranks[copy] = other.ranks[node];
+        pool.sizes[copy] = other.sizes[node];
+        return copy;
+    }
+
+
+    /**
+     * returns every slot of the subtree rooted at node to the free list of pool
+     * Complexity: O(size of the subtree)
+     */
+    private static void releaseSubtree(Pool pool, int node) {
+        if (node == NIL) {
+            return;
+        }
+        int left = pool.lefts[node];
+        int right = pool.rights[node];
+        pool.release(node);
+        releaseSubtree(pool, left);
+        releaseSubtree(pool, right);
+    }
+
+
+    /**
+     * cuts node from its parent so it can be used as the root of a tree
+     * Complexity: O(1)
+     */
+    private int detach(int node) {
+        if (node != NIL) {
+            pool.parents[node] = NIL;
+        }
+        return node;
+    }
+
+
+    /**
+     * joins the trees rooted at left and right (keys(left) < key(x) < keys(right)) using x,
+     * and returns the root of the result.
+     * Complexity: O(|rank(left) - rank(right)| + 1)
+     */
+    private int joinNodes(int left, int x, int right) {
+        int[] ranks = pool.ranks;
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        int[] parents = pool.parents;
+        if (ranks[left] > ranks[right] + 1) {
+            int secondb = NIL;
+            int first = left;
+            while (ranks[first] > ranks[right] + 1) {
+                secondb = first;
+                first = rights[first];
+            }
+            link(x, first, right);
+            rights[secondb] = x;
+            parents[x] = secondb;
+            return fixUp(secondb);
+        }
+        if (ranks[right] > ranks[left] + 1) {
+            int secondb = NIL;
+            int first = right;
+            while (ranks[first] > ranks[left] + 1) {
+                secondb = first;
+                first = lefts[first];
+            }
+            link(x, left, first);
+            lefts[secondb] = x;
+            parents[x] = secondb;
+            return fixUp(secondb);
+        }
+        link(x, left, right);
+        parents[x] = NIL;
+        return x;
+    }
+
+
+    /**
+     * makes left and right the children of x and recomputes its rank and size
+     * Complexity: O(1)
+     */
+    private void link(int x, int left, int right) {
+        pool.lefts[x] = left;
+        pool.rights[x] = right;
+        if (left != NIL) {
+            pool.parents[left] = x;
+        }
+        if (right != NIL) {
+            pool.parents[right] = x;
+        }
+        update(x);
+    }
+
+
+    /**
+     * recomputes the rank and size of node from its children
+     * Complexity: O(1)
+     */
+    private void update(int node) {
+        int left = pool.lefts[node];
+        int right = pool.rights[node];
+        pool.ranks[node] = Math.max(pool.ranks[left], pool.ranks[right]) + 1;
+        pool.sizes[node] = pool.sizes[left] + pool.sizes[right] + 1;
+    }
+
+
+    /**
+     * walks from node to the root recomputing rank and size and rotating where
+     * the rank difference of the children exceeds one. returns the root.
+     * Complexity: O(depth of node)
+     */
+    private int fixUp(int node) {
+        int[] ranks = pool.ranks;
+        int[] lefts = pool.lefts;
+        int[] rights = pool.rights;
+        while (true) {
+            update(node);
+            int left = lefts[node];
+            int right = rights[node];
+            if (ranks[left] > ranks[right] + 1) {
+                if (ranks[rights[left]] > ranks[lefts[left]]) {
+                    leftRotate(left);
+                    update(left);
+                    update(lefts[node]);
+                }
+                rightRotate(node);
+                update(node);
+                node = pool.parents[node];
+                update(node);
+            }
+            else if (ranks[right] > ranks[left] + 1) {
+                if (ranks[lefts[right]] > ranks[rights[right]]) {
+                    rightRotate(right);
+                    update(right);
+                    update(rights[node]);
+                }
+                leftRotate(node);
+                update(node);
+                node = pool.parents[node];
+                update(node);
+            }
+            int parent = pool.parents[node];
+            if (parent == NIL) {
+                return node;
+            }
+            node = parent;
+        }
+    }
+
+
+    /**
+     * Pool
+     *
+     * The struct-of-arrays node store. Slot 0 is the virtual node.
+     * Released slots are chained through rights[] into a free list.
+     */
+    static final class Pool {
+        int[] keys;
+        int[] ranks;
+        int[] sizes;
+        int[] lefts;
+        int[] rights;
+        int[] parents;
+        String[] values;
+        int used;
+        int free;
+
+        Pool(int capacity) {
+            capacity = Math.max(capacity, 2);
+            keys = new int[capacity];
+            ranks = new int[capacity];
+            sizes = new int[capacity];
+            lefts = new int[capacity];
+            rights = new int[capacity];
+            parents = new int[capacity];
+            values = new String[capacity];
+            keys[NIL] = -1;
+            ranks[NIL] = -1;
+            used = 1;
+            free = NIL;
+        }
+
+        /**
+         * returns a fresh leaf slot holding key and value
+         * Complexity: O(1) amortized
+         */
+        int allocate(int key, String value, int parent) {
+            int node;
+            if (free != NIL) {
+                node = free;
+                free = rights[node];
+            }
+            else {
+                if (used == keys.length) {
+                    grow();
+                }
+                node = used++;
+            }
+            keys[node] = key;
+            values[node] = value;
+            ranks[node] = 0;
+            sizes[node] = 1;
+            lefts[node] = NIL;
+            rights[node] = NIL;
+            parents[node] = parent;
+            return node;
+        }
+
+        /**
+         * returns the slot of node to the free list
+         * Complexity: O(1)
+         */
+        void release(int node) {
+            values[node] = null;
+            lefts[node] = NIL;
+            parents[node] = NIL;
+            rights[node] = free;
+            free = node;
+        }
+
+        private void grow() {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+    }
+
+
+    /**
+     * NodeView
+     *
+     * An IAVLNode over one slot of a pool, created only by getRoot() and its navigation methods.
+     */
+    static final class NodeView implements AVLTree.IAVLNode {
+        final Pool pool;
+        final int node;
+
+        NodeView(Pool pool, int node) {
+            this.pool = pool;
+            this.node = node;
+        }
+
+        public int getKey() {
+            return node == NIL ? -1 : pool.keys[node];
+        }
+
+        public String getValue() {
+            return pool.values[node];
+        }
+
+        public void setLeft(AVLTree.IAVLNode other) {
+            requireMutable();
+            pool.lefts[node] = ((NodeView) other).node;
+        }
+
+        public AVLTree.IAVLNode getLeft() {
+            return node == NIL ? null : new NodeView(pool, pool.lefts[node]);
+        }
+
+        public void setRight(AVLTree.IAVLNode other) {
+            requireMutable();
+            pool.rights[node] = ((NodeView) other).node;
+        }
+
+        public AVLTree.IAVLNode getRight() {
+            return node == NIL ? null : new NodeView(pool, pool.rights[node]);
+        }
+
+        public void setParent(AVLTree.IAVLNode other) {
+            requireMutable();
+            pool.parents[node] = ((NodeView) other).node;
+        }
+
+        public AVLTree.IAVLNode getParent() {
+            int parent = pool.parents[node];
+            return node == NIL || parent == NIL ? null : new NodeView(pool, parent);
+        }
+
+        public boolean isRealNode() {
+            return node != NIL;
+        }
+
+        public void setHeight(int height) {
+            requireMutable();
+            pool.ranks[node] = height;
+        }
+
+        public int getHeight() {
+            return pool.ranks[node];
+        }
+
+        /**
+         * slot NIL is the virtual node of every tree on the pool, so the setters must not reach it
+         */
+        private void requireMutable() {
+            if (node == NIL) {
+                throw new IllegalStateException("the virtual node is shared by every tree on the pool and cannot be changed");
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ *
+ * ConcurrentAVLTree
+ *
+ * A thread-safe AVL Tree with distinct integer keys and info, built on the immutable
+ * nodes of PersistentAVLTree. Readers take the current root once and walk it without
+ * any lock, so search, min and max never block and always see a consistent version.
+ * A writer builds the new version off to the side (copying only the search path and
+ * the nodes it rotates) and publishes it with a single compare-and-set of the root,
+ * retrying from the new root if another writer got there first.
+ *
+ * Every failed compare-and-set throws a whole path copy away, so retries are bounded:
+ * a writer backs off for a random, doubling time after each failure, and after
+ * OPTIMISTIC_ATTEMPTS failures it takes writeLock and retries there, where it only
+ * races the writers that are still within their own first attempts. Readers never
+ * take the lock.
+ *
+ */
+
+public class ConcurrentAVLTree {
+
+    static final int OPTIMISTIC_ATTEMPTS = 4;
+    static final long BACKOFF_NANOS = 1L << 10;
+    static final long MAX_BACKOFF_NANOS = 1L << 16;
+    private static final int FAILED = -2;
+
+    private final AtomicReference<PersistentAVLTree.Node> root = new AtomicReference<>();
+    private final Object writeLock = new Object();
+    private final LongAdder failedPublishes = new LongAdder();
+
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     *
+     * Complexity : O(1)
+     */
+    public boolean empty() {
+        return root.get() == null;
+    }
+
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return PersistentAVLTree.size(root.get());
+    }
+
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null. Never blocks.
+     *
+     * Complexity : O(log(n))
+     */
+    public String search(int k) {
+        PersistentAVLTree.Node node = PersistentAVLTree.find(root.get(), k);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty. Never blocks.
+     * Complexity : O(log(n))
+     */
+    public String min() {
+        PersistentAVLTree.Node node = PersistentAVLTree.first(root.get());
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty. Never blocks.
+     * Complexity : O(log(n))
+     */
+    public String max() {
+        PersistentAVLTree.Node node = PersistentAVLTree.last(root.get());
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the AVL tree.
+     * returns the number of nodes the successful attempt created,
+     * or -1 if an item with key k already exists in the tree.
+     * Complexity : O(log(n)) per attempt
+     */
+    public int insert(final int k, final String i) {
+        return write(new Write() {
+            @Override
+            PersistentAVLTree.Node apply(PersistentAVLTree.PathCopy path, PersistentAVLTree.Node current) {
+                return path.insert(current, k, i);
+            }
+        });
+    }
+
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the AVL tree.
+     * returns the number of nodes the successful attempt created,
+     * or -1 if an item with key k was not found in the tree.
+     * Complexity : O(log(n)) per attempt
+     */
+    public int delete(final int k) {
+        return write(new Write() {
+            @Override
+            PersistentAVLTree.Node apply(PersistentAVLTree.PathCopy path, PersistentAVLTree.Node current) {
+                return path.delete(current, k);
+            }
+        });
+    }
+
+
+    /**
+     * long failedPublishes()
+     *
+     * returns how many path copies were thrown away so far because another writer
+     * published first
+     * Complexity : O(number of threads)
+     */
+    long failedPublishes() {
+        return failedPublishes.sum();
+    }
+
+
+    /**
+     * public PersistentAVLTree snapshot()
+     *
+     * returns a point-in-time copy of the tree that later updates do not affect.
+     * Complexity : O(1)
+     */
+    public PersistentAVLTree snapshot() {
+        return new PersistentAVLTree(root.get());
+    }
+
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys of one version of the tree.
+     * Complexity : O(n)
+     */
+    public int[] keysToArray() {
+        PersistentAVLTree.Node current = root.get();
+        int[] arr = new int[PersistentAVLTree.size(current)];
+        PersistentAVLTree.fillKeys(current, arr, 0);
+        return arr;
+    }
+
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info of one version of the tree,
+     * sorted by their respective keys.
+     * Complexity : O(n)
+     */
+    public String[] infoToArray() {
+        PersistentAVLTree.Node current = root.get();
+        String[] arr = new String[PersistentAVLTree.size(current)];
+        PersistentAVLTree.fillInfo(current, arr, 0);
+        return arr;
+    }
+
+
+    /**
+     * runs write against the current root until its version is published, or until it
+     * leaves the tree unchanged; returns the nodes the published attempt created, or -1.
+     * The first OPTIMISTIC_ATTEMPTS attempts back off after a failure, the rest hold writeLock.
+     * Complexity : O(log(n)) per attempt
+     */
+    private int write(Write write) {
+        long backoff = BACKOFF_NANOS;
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            int copied = attempt(write);
+            if (copied != FAILED) {
+                return copied;
+            }
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(backoff) + 1);
+            backoff = Math.min(2 * backoff, MAX_BACKOFF_NANOS);
+        }
+        synchronized (writeLock) {
+            while (true) {
+                int copied = attempt(write);
+                if (copied != FAILED) {
+                    return copied;
+                }
+            }
+        }
+    }
+
+    private int attempt(Write write) {
+        PersistentAVLTree.PathCopy path = new PersistentAVLTree.PathCopy();
+        PersistentAVLTree.Node current = root.get();
+        PersistentAVLTree.Node fresh = write.apply(path, current);
+        if (fresh == current) {
+            return -1;
+        }
+        if (root.compareAndSet(current, fresh)) {
+            return path.copied;
+        }
+        failedPublishes.increment();
+        return FAILED;
+    }
+
+
+    /**
+     * Write builds the next version of the tree from current with path, returning
+     * current itself when the write changes nothing.
+     */
+    private abstract static class Write {
+        abstract PersistentAVLTree.Node apply(PersistentAVLTree.PathCopy path, PersistentAVLTree.Node current);
+    }
+}
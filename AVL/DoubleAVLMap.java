@@ -0,0 +1,169 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * DoubleAVLMap
+ *
+ * An AVL map from primitive double keys to values of type V. Keys stay unboxed in
+ * the nodes and are ordered like Double.compare; the balancing is done by AbstractAVLMap.
+ * NaN is a single key larger than every other and -0.0 comes before 0.0.
+ *
+ * Generated from templates/PrimitiveAVLMap.template by templates/generate-maps.sh;
+ * change the template and regenerate rather than editing this file.
+ *
+ */
+
+public class DoubleAVLMap<V> extends AbstractAVLMap<V, DoubleAVLMap.Entry<V>> {
+
+
+    /**
+     * public V get(double key)
+     *
+     * returns the value mapped to key, or null if key is not in the map
+     * Complexity : O(log(n))
+     */
+    public V get(double key) {
+        Entry<V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public boolean containsKey(double key)
+     *
+     * returns true if and only if key is in the map
+     * Complexity : O(log(n))
+     */
+    public boolean containsKey(double key) {
+        return find(key) != null;
+    }
+
+
+    /**
+     * public V put(double key, V value)
+     *
+     * maps key to value. returns the value key was mapped to before, or null if
+     * key is new to the map.
+     * Complexity : O(log(n))
+     */
+    public V put(double key, V value) {
+        Entry<V> parent = null;
+        Entry<V> node = root;
+        int comparison = 0;
+        while (node != null) {
+            comparison = Double.compare(key, node.key);
+            if (comparison == 0) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        attach(parent, new Entry<V>(key, value), comparison < 0);
+        return null;
+    }
+
+
+    /**
+     * public V remove(double key)
+     *
+     * removes key from the map. returns the value it was mapped to, or null if
+     * key was not in the map.
+     * Complexity : O(log(n))
+     */
+    public V remove(double key) {
+        Entry<V> node = find(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+
+    /**
+     * public double firstKey()
+     *
+     * returns the smallest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public double firstKey() {
+        return keyOf(firstNode());
+    }
+
+
+    /**
+     * public double lastKey()
+     *
+     * returns the largest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public double lastKey() {
+        return keyOf(lastNode());
+    }
+
+
+    /**
+     * public double select(int i)
+     *
+     * returns the i-th smallest key, counting from 0
+     * throws IndexOutOfBoundsException if i is not in [0, size())
+     * Complexity : O(log(n))
+     */
+    public double select(int i) {
+        return selectNode(i).key;
+    }
+
+
+    /**
+     * public double[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the map.
+     * Complexity : O(n)
+     */
+    public double[] keysToArray() {
+        double[] keys = new double[size()];
+        int i = 0;
+        for (Entry<V> node = firstNode(); node != null; node = successor(node)) {
+            keys[i++] = node.key;
+        }
+        return keys;
+    }
+
+    private Entry<V> find(double key) {
+        Entry<V> node = root;
+        while (node != null) {
+            int comparison = Double.compare(key, node.key);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static double keyOf(Entry<?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+
+    /**
+     * Entry
+     *
+     * A map node with a key of type double.
+     */
+    static final class Entry<V> extends AbstractAVLMap.Node<V, Entry<V>> {
+        final double key;
+
+        Entry(double key, V value) {
+            super(value);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,513 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+
+/**
+ *
+ * DurableAVLTree
+ *
+ * An AVLTree whose changes survive a crash. Every insert, delete, split and join is
+ * appended to a write-ahead log before it is applied; the log is forced to the storage
+ * device once every groupSize records (group commit), or after every record when
+ * groupSize is 1. A checkpoint writes the whole tree with AVLTree.writeTo and starts
+ * a new, empty log; opening the directory again loads the newest checkpoint and
+ * replays the log written after it.
+ *
+ * Directory layout, where g is the generation of the newest checkpoint:
+ *   checkpoint-g   AVLTree snapshot (no file for generation 0, the empty tree)
+ *   log-g          records of the changes made after checkpoint-g
+ * A record is its payload length, the CRC32 of the payload, then the payload: an
+ * operation byte followed by its arguments. Replay stops at the first torn or
+ * corrupt record, which is where a crash interrupted the log, and cuts it off.
+ *
+ * With groupSize > 1 a change is durable only once its group is forced; sync(),
+ * checkpoint() and close() force the log at once. Up to groupSize - 1 acknowledged
+ * changes can be lost in a crash.
+ * All methods are synchronized on the tree.
+ *
+ */
+
+public class DurableAVLTree implements Closeable {
+
+    final static byte INSERT = 1;
+    final static byte DELETE = 2;
+    final static byte SPLIT = 3;
+    final static byte JOIN = 4;
+    final static int RECORD_HEADER_BYTES = 8; // payload length, CRC32
+    final static int BUFFER_BYTES = 1 << 16;
+
+    private final Path directory;
+    private final int groupSize;
+    private final long checkpointBytes;
+    private final AVLTree tree;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer pending = ByteBuffer.allocate(BUFFER_BYTES); // records not yet written to the log
+    private FileChannel log;
+    private long generation;
+    private long logBytes;
+    private int unforced; // records appended since the log was last forced
+
+    private DurableAVLTree(Path directory, int groupSize, long checkpointBytes, AVLTree tree, long generation) {
+        this.directory = directory;
+        this.groupSize = groupSize;
+        this.checkpointBytes = checkpointBytes;
+        this.tree = tree;
+        this.generation = generation;
+    }
+
+
+    /**
+     * public static DurableAVLTree open(Path directory, int groupSize, long checkpointBytes)
+     *
+     * opens the tree kept in directory, creating the directory if needed: loads the newest
+     * checkpoint and replays the log after it. The log is forced every groupSize records
+     * (1 forces after every change), and a checkpoint is taken whenever the log grows past
+     * checkpointBytes (0 or less: only when checkpoint() is called).
+     * Complexity : O(n + length of the log)
+     */
+    public static DurableAVLTree open(Path directory, int groupSize, long checkpointBytes) throws IOException {
+        if (groupSize < 1) {
+            throw new IllegalArgumentException("groupSize must be at least 1: " + groupSize);
+        }
+        Files.createDirectories(directory);
+        long generation = newestGeneration(directory);
+        AVLTree tree = new AVLTree();
+        Path checkpoint = directory.resolve("checkpoint-" + generation);
+        if (Files.exists(checkpoint)) {
+            try (FileChannel in = FileChannel.open(checkpoint)) {
+                tree = AVLTree.readFrom(in);
+            }
+        }
+        DurableAVLTree durable = new DurableAVLTree(directory, groupSize, checkpointBytes, tree, generation);
+        durable.log = FileChannel.open(directory.resolve("log-" + generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        durable.replay();
+        durable.deleteOlderGenerations();
+        return durable;
+    }
+
+    /**
+     * returns the generation of the newest checkpoint in directory, 0 if there is none
+     */
+    private static long newestGeneration(Path directory) throws IOException {
+        long newest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "checkpoint-*")) {
+            for (Path file : files) {
+                newest = Math.max(newest, Long.parseLong(file.getFileName().toString().substring("checkpoint-".length())));
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * applies every intact record of the log to the tree and cuts the log after the last one
+     * Complexity : O(length of the log)
+     */
+    private void replay() throws IOException {
+        long size = log.size();
+        long position = 0; // where the next record starts
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.flip();
+        while (fill(buffer, position, RECORD_HEADER_BYTES)) {
+            int length = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            if (length <= 0 || length > size - position - RECORD_HEADER_BYTES) {
+                break;
+            }
+            ByteBuffer payload;
+            if (fill(buffer, position, RECORD_HEADER_BYTES + length)) {
+                buffer.position(buffer.position() + RECORD_HEADER_BYTES);
+                payload = buffer.slice();
+                payload.limit(length);
+                buffer.position(buffer.position() + length);
+            }
+            else { // larger than the buffer: read on its own
+                payload = ByteBuffer.allocate(length);
+                while (payload.hasRemaining()) {
+                    if (log.read(payload, position + RECORD_HEADER_BYTES + payload.position()) < 0) {
+                        break;
+                    }
+                }
+                payload.flip();
+                buffer.clear();
+                buffer.flip();
+            }
+            crc.reset();
+            crc.update(payload.array(), payload.arrayOffset(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(payload);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        log.truncate(position);
+        log.position(position);
+        logBytes = position;
+    }
+
+    /**
+     * makes sure buffer holds the bytes [position, position + bytes) of the log, reading
+     * ahead as far as the buffer allows. returns false if the log or the buffer is too short.
+     */
+    private boolean fill(ByteBuffer buffer, long position, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (bytes > BUFFER_BYTES) {
+            return false;
+        }
+        long end = position + buffer.remaining();
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            int read = log.read(buffer, end);
+            if (read < 0) {
+                break;
+            }
+            end += read;
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    private void apply(ByteBuffer payload) throws IOException {
+        byte operation = payload.get();
+        int key = payload.getInt();
+        switch (operation) {
+            case INSERT:
+                tree.insert(key, getString(payload));
+                break;
+            case DELETE:
+                tree.delete(key);
+                break;
+            case SPLIT:
+                tree.split(key);
+                break;
+            case JOIN:
+                AVLTree middle = new AVLTree();
+                middle.insert(key, getString(payload));
+                AVLTree other = AVLTree.readFrom(new ByteArrayInputStream(payload.array(),
+                        payload.arrayOffset() + payload.position(), payload.remaining()));
+                tree.join(middle.getRoot(), other);
+                break;
+            default:
+                throw new IOException("corrupt log record: operation " + operation);
+        }
+    }
+
+
+    /**
+     * public synchronized int insert(int k, String i)
+     *
+     * logs and applies tree.insert(k, i); returns what it returns
+     * Complexity : O(log(n)), plus a force of the log when the group is full
+     */
+    public synchronized int insert(int k, String i) throws IOException {
+        ByteBuffer record = startRecord(INSERT, k, 9 + maxBytes(i));
+        putString(record, i);
+        append(record);
+        int result = tree.insert(k, i);
+        checkpointIfDue();
+        return result;
+    }
+
+
+    /**
+     * public synchronized int delete(int k)
+     *
+     * logs and applies tree.delete(k); returns what it returns
+     * Complexity : O(log(n)), plus a force of the log when the group is full
+     */
+    public synchronized int delete(int k) throws IOException {
+        append(startRecord(DELETE, k, 5));
+        int result = tree.delete(k);
+        checkpointIfDue();
+        return result;
+    }
+
+
+    /**
+     * public synchronized AVLTree[] split(int x)
+     *
+     * logs and applies tree.split(x). As with AVLTree.split this tree is left empty;
+     * the two trees returned are ordinary, not durable, AVLTrees.
+     * Complexity : O(log(n)), plus a force of the log when the group is full
+     */
+    public synchronized AVLTree[] split(int x) throws IOException {
+        append(startRecord(SPLIT, x, 5));
+        AVLTree[] parts = tree.split(x);
+        checkpointIfDue();
+        return parts;
+    }
+
+
+    /**
+     * public synchronized int join(AVLTree.IAVLNode x, AVLTree t)
+     *
+     * logs x and the items of t, then applies tree.join(x, t); returns what it returns.
+     * Same preconditions as AVLTree.join; they are checked before anything is logged, so a
+     * rejected join never reaches the log.
+     * throws IllegalArgumentException if t keeps an aggregate (this tree keeps none) or if
+     * the keys of x and t do not all lie on one side of the keys of this tree
+     * Complexity : O(log(n) + size of t)
+     */
+    public synchronized int join(AVLTree.IAVLNode x, AVLTree t) throws IOException {
+        if (t.aggregate != null) {
+            throw new IllegalArgumentException("cannot join a tree that keeps an aggregate");
+        }
+        if (!joinable(t.Max, x.getKey(), tree.Min) && !joinable(tree.Max, x.getKey(), t.Min)) {
+            throw new IllegalArgumentException("key " + x.getKey() + " does not separate the two trees");
+        }
+        ByteArrayOutputStream items = new ByteArrayOutputStream();
+        t.writeTo(items);
+        ByteBuffer record = startRecord(JOIN, x.getKey(), 9 + maxBytes(x.getValue()) + items.size());
+        putString(record, x.getValue());
+        record.put(items.toByteArray());
+        append(record);
+        int result = tree.join(x, t);
+        checkpointIfDue();
+        return result;
+    }
+
+
+    /**
+     * public synchronized void sync()
+     *
+     * makes every change so far durable
+     * Complexity : O(1) besides the force itself
+     */
+    public synchronized void sync() throws IOException {
+        flush();
+        log.force(false);
+        unforced = 0;
+    }
+
+
+    /**
+     * public synchronized void checkpoint()
+     *
+     * writes the tree to a new checkpoint and starts an empty log after it. The checkpoint
+     * becomes current with an atomic rename, so a crash at any step leaves either the old
+     * checkpoint with its whole log or the new one.
+     * Complexity : O(n)
+     */
+    public synchronized void checkpoint() throws IOException {
+        sync();
+        long next = generation + 1;
+        Path temporary = directory.resolve("checkpoint.tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            tree.writeTo(out);
+            out.force(true);
+        }
+        Files.move(temporary, directory.resolve("checkpoint-" + next), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        FileChannel nextLog = FileChannel.open(directory.resolve("log-" + next),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        log.close();
+        log = nextLog;
+        logBytes = 0;
+        generation = next;
+        deleteOlderGenerations();
+    }
+
+    /**
+     * takes a checkpoint once the log has grown past checkpointBytes; called after a change
+     * is applied, so the checkpoint includes it
+     */
+    private void checkpointIfDue() throws IOException {
+        if (checkpointBytes > 0 && logBytes >= checkpointBytes) {
+            checkpoint();
+        }
+    }
+
+    /**
+     * makes the rename of a checkpoint durable before the files it replaces are deleted.
+     * Not every platform can open a directory; there the rename is left to the file system.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory)) {
+            channel.force(true);
+        } catch (IOException unsupported) {
+        }
+    }
+
+    private void deleteOlderGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{checkpoint,log}-*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (Long.parseLong(name.substring(name.indexOf('-') + 1)) < generation) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * public synchronized void close()
+     *
+     * forces the log and closes it
+     */
+    public synchronized void close() throws IOException {
+        sync();
+        log.close();
+    }
+
+
+    /**
+     * public synchronized String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * Complexity : O(log(n))
+     */
+    public synchronized String search(int k) {
+        return tree.search(k);
+    }
+
+
+    /**
+     * public synchronized boolean empty()
+     * returns true if and only if the tree is empty
+     *
+     * Complexity : O(1)
+     */
+    public synchronized boolean empty() {
+        return tree.empty();
+    }
+
+
+    /**
+     * public synchronized int size()
+     *
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public synchronized int size() {
+        return tree.size();
+    }
+
+
+    /**
+     * public synchronized int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree.
+     * Complexity : O(n)
+     */
+    public synchronized int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+
+    /**
+     * public synchronized String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree, sorted by their respective keys.
+     * Complexity : O(n)
+     */
+    public synchronized String[] infoToArray() {
+        return tree.infoToArray();
+    }
+
+    /**
+     * returns a buffer holding the start of a record: room for the record header, then the
+     * operation and key. capacity bounds the payload.
+     */
+    private ByteBuffer startRecord(byte operation, int key, int capacity) throws IOException {
+        int bytes = RECORD_HEADER_BYTES + capacity;
+        if (pending.remaining() < bytes) {
+            flush();
+        }
+        ByteBuffer record = bytes <= BUFFER_BYTES ? pending : ByteBuffer.allocate(bytes);
+        record.mark();
+        record.position(record.position() + RECORD_HEADER_BYTES);
+        record.put(operation);
+        record.putInt(key);
+        return record;
+    }
+
+    /**
+     * fills in the header of the record started in record, queues it and forces the log
+     * when the group is full
+     */
+    private void append(ByteBuffer record) throws IOException {
+        int end = record.position();
+        record.reset();
+        int start = record.position();
+        int length = end - start - RECORD_HEADER_BYTES;
+        crc.reset();
+        crc.update(record.array(), start + RECORD_HEADER_BYTES, length);
+        record.putInt(length);
+        record.putInt((int) crc.getValue());
+        record.position(end);
+        if (record != pending) { // too large for the pending buffer, which startRecord emptied
+            record.flip();
+            writeFully(record);
+        }
+        logBytes += RECORD_HEADER_BYTES + length;
+        if (++unforced >= groupSize) {
+            sync();
+        }
+    }
+
+    /**
+     * writes the pending records to the log (without forcing it)
+     */
+    private void flush() throws IOException {
+        pending.flip();
+        writeFully(pending);
+        pending.clear();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+    }
+
+    /**
+     * true if the largest key of one tree (smallerMax) is below key and the smallest of the other above it;
+     * an empty tree has the virtual node for both
+     */
+    private static boolean joinable(AVLTree.AVLNode smallerMax, int key, AVLTree.AVLNode largerMin) {
+        return (!smallerMax.isRealNode() || smallerMax.getKey() < key) && (!largerMin.isRealNode() || largerMin.getKey() > key);
+    }
+
+    private static int maxBytes(String s) {
+        return s == null ? 0 : 3 * s.length();
+    }
+
+    /**
+     * puts the UTF-8 length of s plus one (0 for null), then its bytes
+     */
+    private static void putString(ByteBuffer record, String s) {
+        if (s == null) {
+            record.putInt(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        record.putInt(bytes.length + 1);
+        record.put(bytes);
+    }
+
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return s;
+    }
+}
@@ -0,0 +1,168 @@
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * IntAVLMap
+ *
+ * An AVL map from primitive int keys to values of type V. Keys stay unboxed in
+ * the nodes and are ordered like Integer.compare; the balancing is done by AbstractAVLMap.
+ *
+ * Generated from templates/PrimitiveAVLMap.template by templates/generate-maps.sh;
+ * change the template and regenerate rather than editing this file.
+ *
+ */
+
+public class IntAVLMap<V> extends AbstractAVLMap<V, IntAVLMap.Entry<V>> {
+
+
+    /**
+     * public V get(int key)
+     *
+     * returns the value mapped to key, or null if key is not in the map
+     * Complexity : O(log(n))
+     */
+    public V get(int key) {
+        Entry<V> node = find(key);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public boolean containsKey(int key)
+     *
+     * returns true if and only if key is in the map
+     * Complexity : O(log(n))
+     */
+    public boolean containsKey(int key) {
+        return find(key) != null;
+    }
+
+
+    /**
+     * public V put(int key, V value)
+     *
+     * maps key to value. returns the value key was mapped to before, or null if
+     * key is new to the map.
+     * Complexity : O(log(n))
+     */
+    public V put(int key, V value) {
+        Entry<V> parent = null;
+        Entry<V> node = root;
+        int comparison = 0;
+        while (node != null) {
+            comparison = Integer.compare(key, node.key);
+            if (comparison == 0) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        attach(parent, new Entry<V>(key, value), comparison < 0);
+        return null;
+    }
+
+
+    /**
+     * public V remove(int key)
+     *
+     * removes key from the map. returns the value it was mapped to, or null if
+     * key was not in the map.
+     * Complexity : O(log(n))
+     */
+    public V remove(int key) {
+        Entry<V> node = find(key);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+
+    /**
+     * public int firstKey()
+     *
+     * returns the smallest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public int firstKey() {
+        return keyOf(firstNode());
+    }
+
+
+    /**
+     * public int lastKey()
+     *
+     * returns the largest key in the map
+     * throws NoSuchElementException if the map is empty
+     * Complexity : O(log(n))
+     */
+    public int lastKey() {
+        return keyOf(lastNode());
+    }
+
+
+    /**
+     * public int select(int i)
+     *
+     * returns the i-th smallest key, counting from 0
+     * throws IndexOutOfBoundsException if i is not in [0, size())
+     * Complexity : O(log(n))
+     */
+    public int select(int i) {
+        return selectNode(i).key;
+    }
+
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the map.
+     * Complexity : O(n)
+     */
+    public int[] keysToArray() {
+        int[] keys = new int[size()];
+        int i = 0;
+        for (Entry<V> node = firstNode(); node != null; node = successor(node)) {
+            keys[i++] = node.key;
+        }
+        return keys;
+    }
+
+    private Entry<V> find(int key) {
+        Entry<V> node = root;
+        while (node != null) {
+            int comparison = Integer.compare(key, node.key);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static int keyOf(Entry<?> node) {
+        if (node == null) {
+            throw new NoSuchElementException();
+        }
+        return node.key;
+    }
+
+
+    /**
+     * Entry
+     *
+     * A map node with a key of type int.
+     */
+    static final class Entry<V> extends AbstractAVLMap.Node<V, Entry<V>> {
+        final int key;
+
+        Entry(int key, V value) {
+            super(value);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ *
+ * IntervalTree
+ *
+ * A map from closed intervals [start, end] of long coordinates to values of type V,
+ * ordered by start and then by end. Every node also keeps the largest end in its
+ * subtree (maxEnd); update() recomputes it wherever AbstractAVLMap recomputes the
+ * size, so it stays correct through every insert, delete and rotation. A subtree
+ * whose maxEnd is below a query cannot hold an overlapping interval and is skipped.
+ *
+ */
+
+public class IntervalTree<V> extends AbstractAVLMap<V, IntervalTree.Interval<V>> {
+
+
+    /**
+     * public V get(long start, long end)
+     *
+     * returns the value mapped to [start, end], or null if the interval is not in the map
+     * Complexity : O(log(n))
+     */
+    public V get(long start, long end) {
+        Interval<V> node = find(start, end);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public V put(long start, long end, V value)
+     *
+     * maps the interval [start, end] to value. returns the value it was mapped to
+     * before, or null if the interval is new to the map.
+     * throws IllegalArgumentException if start > end
+     * Complexity : O(log(n))
+     */
+    public V put(long start, long end, V value) {
+        if (start > end) {
+            throw new IllegalArgumentException("interval [" + start + ", " + end + "] ends before it starts");
+        }
+        Interval<V> parent = null;
+        Interval<V> node = root;
+        int comparison = 0;
+        while (node != null) {
+            comparison = compare(start, end, node);
+            if (comparison == 0) {
+                V previous = node.value;
+                node.value = value;
+                return previous;
+            }
+            parent = node;
+            node = comparison < 0 ? node.left : node.right;
+        }
+        attach(parent, new Interval<V>(start, end, value), comparison < 0);
+        return null;
+    }
+
+
+    /**
+     * public V remove(long start, long end)
+     *
+     * removes the interval [start, end] from the map. returns the value it was mapped
+     * to, or null if it was not in the map.
+     * Complexity : O(log(n))
+     */
+    public V remove(long start, long end) {
+        Interval<V> node = find(start, end);
+        if (node == null) {
+            return null;
+        }
+        unlink(node);
+        return node.value;
+    }
+
+
+    /**
+     * public Iterator<Interval<V>> overlapping(long lo, long hi)
+     *
+     * Returns an iterator over the intervals that share at least one point with [lo, hi],
+     * in (start, end) order. It walks successors through the parent links from the first
+     * interval that reaches lo, skips every subtree whose maxEnd is below lo and stops at
+     * the first start beyond hi; each result is found when next() asks for it.
+     * The map must not be changed while the iterator is in use.
+     * Complexity: O(log(n) + k) for k results that are neighbours in (start, end) order, as
+     * intervals of similar lengths are. The walk visits the nodes on the paths from the root
+     * to the results, so results spread apart by long intervals cost up to O(log(n/k)) more each.
+     */
+    public Iterator<Interval<V>> overlapping(long lo, long hi) {
+        return new OverlapIterator(lo, hi);
+    }
+
+
+    /**
+     * public Iterator<Interval<V>> stab(long point)
+     *
+     * Returns an iterator over the intervals that contain point, as overlapping(point, point) does.
+     * Complexity: as overlapping
+     */
+    public Iterator<Interval<V>> stab(long point) {
+        return new OverlapIterator(point, point);
+    }
+
+
+    /**
+     * recomputes rank, size and maxEnd of node from its sons
+     * Complexity : O(1)
+     */
+    @Override
+    protected void update(Interval<V> node) {
+        super.update(node);
+        node.maxEnd = Math.max(node.end, Math.max(maxEnd(node.left), maxEnd(node.right)));
+    }
+
+    private Interval<V> find(long start, long end) {
+        Interval<V> node = root;
+        while (node != null) {
+            int comparison = compare(start, end, node);
+            if (comparison == 0) {
+                return node;
+            }
+            node = comparison < 0 ? node.left : node.right;
+        }
+        return null;
+    }
+
+    private static int compare(long start, long end, Interval<?> node) {
+        int comparison = Long.compare(start, node.start);
+        return comparison != 0 ? comparison : Long.compare(end, node.end);
+    }
+
+    static long maxEnd(Interval<?> node) {
+        return node == null ? Long.MIN_VALUE : node.maxEnd;
+    }
+
+
+    /**
+     * OverlapIterator walks the intervals overlapping [lo, hi] in order. next holds the
+     * interval it returns next, or null once there is none.
+     */
+    private final class OverlapIterator implements Iterator<Interval<V>> {
+        private final long lo;
+        private final long hi;
+        private Interval<V> next;
+
+        OverlapIterator(long lo, long hi) {
+            this.lo = lo;
+            this.hi = hi;
+            next = (lo > hi || maxEnd(root) < lo) ? null : overlapFrom(leftmost(root));
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Interval<V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Interval<V> current = next;
+            next = overlapFrom(following(current));
+            return current;
+        }
+
+        /**
+         * returns node, or the first interval after it in order, that overlaps [lo, hi];
+         * null once the starts pass hi
+         * Complexity: O(1) for each node walked past
+         */
+        private Interval<V> overlapFrom(Interval<V> node) {
+            while (node != null && node.start <= hi) {
+                if (node.end >= lo) {
+                    return node;
+                }
+                node = following(node);
+            }
+            return null;
+        }
+
+        /**
+         * returns the successor of node, leaving out the subtrees whose maxEnd is below lo
+         * Complexity: O(log(n)), amortized O(1) over the walk
+         */
+        private Interval<V> following(Interval<V> node) {
+            if (maxEnd(node.right) >= lo) {
+                return leftmost(node.right);
+            }
+            while (node.parent != null && node.parent.right == node) {
+                node = node.parent;
+            }
+            return node.parent;
+        }
+
+        /**
+         * returns the first interval in order of the subtree of node (which reaches lo)
+         * that is not inside a left subtree ending below lo
+         * Complexity: O(log(n))
+         */
+        private Interval<V> leftmost(Interval<V> node) {
+            while (maxEnd(node.left) >= lo) {
+                node = node.left;
+            }
+            return node;
+        }
+    }
+
+
+    /**
+     * Interval
+     *
+     * A map node: the interval [start, end], its value, and the largest end in its subtree.
+     */
+    public static final class Interval<V> extends AbstractAVLMap.Node<V, Interval<V>> {
+        final long start;
+        final long end;
+        long maxEnd;
+
+        Interval(long start, long end, V value) {
+            super(value);
+            this.start = start;
+            this.end = end;
+            this.maxEnd = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public V getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,726 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ *
+ * MappedAVLTree
+ *
+ * A persistent AVL Tree with distinct integer keys and info, stored in a
+ * memory-mapped file. Reopening the file gives an immediately usable tree;
+ * every mutation is written in place.
+ *
+ * Crash safety: a mutation rewrites several node records and header fields in
+ * no fixed order and without a journal, so the file is only consistent after
+ * force() or close(). The first mutation after such a point marks the header
+ * dirty and forces that mark to disk; force() clears it once everything else
+ * is on disk. open() refuses a file that is still marked dirty: after a crash
+ * the tree has to be rebuilt from its source.
+ *
+ * File layout (all offsets are byte positions in the file):
+ *   header   magic, root, free list head, end of used space, min, max, state
+ *   nodes    key, rank, size, left, right, parent, value offset (28 bytes each)
+ *   strings  int length followed by the UTF-8 bytes, appended and never rewritten
+ * Nodes and strings are allocated from the same region; released node records
+ * are recycled through a free list. The virtual node is a record right after
+ * the header (rank -1, size 0). Files are limited to 2GB.
+ *
+ */
+
+public class MappedAVLTree implements Closeable {
+
+    final static int MAGIC = 0x41564c4d; // "AVLM"
+    final static int HEADER_MAGIC = 0;
+    final static int HEADER_ROOT = 4;
+    final static int HEADER_FREE = 8;
+    final static int HEADER_END = 12;
+    final static int HEADER_MIN = 16;
+    final static int HEADER_MAX = 20;
+    final static int HEADER_STATE = 24;
+    final static int HEADER_BYTES = 32;
+
+    final static int KEY = 0;
+    final static int RANK = 4;
+    final static int SIZE = 8;
+    final static int LEFT = 12;
+    final static int RIGHT = 16;
+    final static int PARENT = 20;
+    final static int VALUE = 24;
+    final static int NODE_BYTES = 28;
+
+    final static int NIL = HEADER_BYTES;
+    final static int NULL_VALUE = -1;
+    final static int INITIAL_CAPACITY = 1 << 20;
+    final static int STATE_CLEAN = 0;
+    final static int STATE_DIRTY = 1;
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private boolean dirty; // the state on disk is STATE_DIRTY
+
+    private MappedAVLTree(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+
+    /**
+     * public static MappedAVLTree open(Path file)
+     *
+     * opens the tree stored in file, creating an empty one if the file does not exist or is empty.
+     * throws IOException if the file is not a tree, or was changed and not forced or closed since
+     * (it was being written when the process stopped, and must be rebuilt)
+     * Complexity : O(1)
+     */
+    public static MappedAVLTree open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        long length = channel.size();
+        if (length == 0) {
+            MappedAVLTree tree = new MappedAVLTree(channel,
+                    channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_CAPACITY));
+            tree.format();
+            return tree;
+        }
+        if (length < NIL + NODE_BYTES) { //too short for the header and the virtual node
+            channel.close();
+            throw new IOException("not an AVL tree file: " + file);
+        }
+        MappedAVLTree tree = new MappedAVLTree(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, length));
+        if (tree.buffer.getInt(HEADER_MAGIC) != MAGIC) {
+            channel.close();
+            throw new IOException("not an AVL tree file: " + file);
+        }
+        if (tree.buffer.getInt(HEADER_STATE) != STATE_CLEAN) {
+            channel.close();
+            throw new IOException("AVL tree file was not closed cleanly and must be rebuilt: " + file);
+        }
+        return tree;
+    }
+
+
+    /**
+     * writes the header and the virtual node of an empty tree
+     */
+    private void format() {
+        buffer.putInt(HEADER_MAGIC, MAGIC);
+        buffer.putInt(HEADER_ROOT, NIL);
+        buffer.putInt(HEADER_FREE, NIL);
+        buffer.putInt(HEADER_END, NIL + NODE_BYTES);
+        buffer.putInt(HEADER_MIN, NIL);
+        buffer.putInt(HEADER_MAX, NIL);
+        buffer.putInt(HEADER_STATE, STATE_CLEAN);
+        buffer.putInt(NIL + KEY, -1);
+        buffer.putInt(NIL + RANK, -1);
+        buffer.putInt(NIL + SIZE, 0);
+        buffer.putInt(NIL + LEFT, NIL);
+        buffer.putInt(NIL + RIGHT, NIL);
+        buffer.putInt(NIL + PARENT, NIL);
+        buffer.putInt(NIL + VALUE, NULL_VALUE);
+    }
+
+
+    /**
+     * public void force()
+     *
+     * writes all changes of the mapped region to the storage device, then marks the file clean
+     */
+    public void force() {
+        buffer.force();
+        if (dirty) {
+            buffer.putInt(HEADER_STATE, STATE_CLEAN);
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+
+    /**
+     * marks the file dirty on disk before the first write after it was last clean
+     */
+    private void markDirty() {
+        if (!dirty) {
+            buffer.putInt(HEADER_STATE, STATE_DIRTY);
+            buffer.force();
+            dirty = true;
+        }
+    }
+
+
+    /**
+     * public void close()
+     *
+     * forces the changes to disk and closes the file
+     */
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     *
+     * Complexity : O(1)
+     */
+    public boolean empty() {
+        return root() == NIL;
+    }
+
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(root());
+    }
+
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     *
+     * Complexity : O(log(n))
+     */
+    public String search(int k) {
+        int node = find(k);
+        return node == NIL ? null : value(node);
+    }
+
+
+    /**
+     * returns the offset of the node with key k, or NIL if there is none
+     * Complexity : O(log(n))
+     */
+    private int find(int k) {
+        int node = root();
+        while (node != NIL) {
+            int key = key(node);
+            if (k == key) {
+                return node;
+            }
+            node = k < key ? left(node) : right(node);
+        }
+        return NIL;
+    }
+
+
+    /**
+     * public String min()
+     *
+     * Complexity : O(1)
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     */
+    public String min() {
+        return value(buffer.getInt(HEADER_MIN));
+    }
+
+
+    /**
+     * public String max()
+     *
+     * Complexity : O(1)
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     */
+    public String max() {
+        return value(buffer.getInt(HEADER_MAX));
+    }
+
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i to the AVL tree.
+     * returns the number of rebalancing operations (counted as in AVLTree.insert),
+     * or -1 if an item with key k already exists in the tree.
+     * Complexity : O(log(n)), plus the length of i
+     */
+    public int insert(int k, String i) throws IOException {
+        int parent = NIL;
+        int node = root();
+        while (node != NIL) {
+            if (k == key(node)) {
+                return -1;
+            }
+            parent = node;
+            node = k < key(node) ? left(node) : right(node);
+        }
+        markDirty();
+        int fresh = allocateNode(k, appendString(i), parent);
+        if (parent == NIL) {
+            setRoot(fresh);
+            buffer.putInt(HEADER_MIN, fresh);
+            buffer.putInt(HEADER_MAX, fresh);
+            return 0;
+        }
+        if (k < key(parent)) {
+            setLeft(parent, fresh);
+        }
+        else {
+            setRight(parent, fresh);
+        }
+        if (k < key(buffer.getInt(HEADER_MIN))) {
+            buffer.putInt(HEADER_MIN, fresh);
+        }
+        if (k > key(buffer.getInt(HEADER_MAX))) {
+            buffer.putInt(HEADER_MAX, fresh);
+        }
+        for (int p = parent; p != NIL; p = parent(p)) {
+            setSize(p, size(p) + 1);
+        }
+        return insertReBalance(parent);
+    }
+
+
+    /**
+     * insertReBalance climbs from point promoting or rotating until the tree is valid
+     * Complexity : O(log(n))
+     */
+    private int insertReBalance(int point) {
+        int count = 0;
+        while (point != NIL) {
+            int leftEdge = rank(point) - rank(left(point));
+            int rightEdge = rank(point) - rank(right(point));
+            if ((leftEdge == 0 && rightEdge == 1) || (leftEdge == 1 && rightEdge == 0)) {
+                setRank(point, rank(point) + 1);
+                count += 1;
+                point = parent(point);
+            }
+            else if (leftEdge == 0 && rightEdge == 2) {
+                int son = left(point);
+                if (rank(son) - rank(left(son)) == 1) {
+                    rightRotate(point);
+                    setRank(point, rank(point) - 1);
+                    return count + 2;
+                }
+                int freshRoot = right(son);
+                leftRotate(son);
+                rightRotate(point);
+                setRank(freshRoot, rank(freshRoot) + 1);
+                setRank(point, rank(point) - 1);
+                setRank(son, rank(son) - 1);
+                return count + 5;
+            }
+            else if (leftEdge == 2 && rightEdge == 0) {
+                int son = right(point);
+                if (rank(son) - rank(right(son)) == 1) {
+                    leftRotate(point);
+                    setRank(point, rank(point) - 1);
+                    return count + 2;
+                }
+                int freshRoot = left(son);
+                rightRotate(son);
+                leftRotate(point);
+                setRank(freshRoot, rank(freshRoot) + 1);
+                setRank(point, rank(point) - 1);
+                setRank(son, rank(son) - 1);
+                return count + 5;
+            }
+            else {
+                return count;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes an item with key k from the binary tree, if it is there.
+     * returns the number of rebalancing operations (counted as in AVLTree.delete),
+     * or -1 if an item with key k was not found in the tree.
+     * the info string stays in the string heap.
+     * Complexity : O(log(n))
+     */
+    public int delete(int k) {
+        int node = find(k);
+        if (node == NIL) {
+            return -1;
+        }
+        markDirty();
+        int removed = node;
+        if (left(node) != NIL && right(node) != NIL) { // internal node: take the successor's item
+            removed = right(node);
+            while (left(removed) != NIL) {
+                removed = left(removed);
+            }
+            buffer.putInt(node + KEY, key(removed));
+            buffer.putInt(node + VALUE, buffer.getInt(removed + VALUE));
+        }
+        int son = left(removed) != NIL ? left(removed) : right(removed);
+        int parent = parent(removed);
+        replaceChild(parent, removed, son);
+        int min = buffer.getInt(HEADER_MIN);
+        int max = buffer.getInt(HEADER_MAX);
+        boolean minMaxChanged = removed == min || removed == max || node == min || node == max;
+        releaseNode(removed);
+        for (int p = parent; p != NIL; p = parent(p)) {
+            setSize(p, size(p) - 1);
+        }
+        if (minMaxChanged) {
+            resetMinMax();
+        }
+        return deleteReBalance(parent);
+    }
+
+
+    /**
+     * deleteReBalance climbs from point demoting or rotating until the tree is valid
+     * Complexity : O(log(n))
+     */
+    private int deleteReBalance(int point) {
+        int count = 0;
+        while (point != NIL) {
+            int leftEdge = rank(point) - rank(left(point));
+            int rightEdge = rank(point) - rank(right(point));
+            if (leftEdge == 2 && rightEdge == 2) {
+                setRank(point, rank(point) - 1);
+                count += 1;
+                point = parent(point);
+            }
+            else if (leftEdge == 3 && rightEdge == 1) {
+                int son = right(point);
+                int sonLeft = rank(son) - rank(left(son));
+                int sonRight = rank(son) - rank(right(son));
+                if (sonLeft == 1 && sonRight == 1) {
+                    leftRotate(point);
+                    setRank(point, rank(point) - 1);
+                    setRank(son, rank(son) + 1);
+                    return count + 3;
+                }
+                if (sonLeft == 2) {
+                    leftRotate(point);
+                    setRank(point, rank(point) - 2);
+                    count += 3;
+                    point = parent(son);
+                }
+                else {
+                    int freshRoot = left(son);
+                    rightRotate(son);
+                    leftRotate(point);
+                    setRank(freshRoot, rank(freshRoot) + 1);
+                    setRank(point, rank(point) - 2);
+                    setRank(son, rank(son) - 1);
+                    count += 6;
+                    point = parent(freshRoot);
+                }
+            }
+            else if (leftEdge == 1 && rightEdge == 3) {
+                int son = left(point);
+                int sonLeft = rank(son) - rank(left(son));
+                int sonRight = rank(son) - rank(right(son));
+                if (sonLeft == 1 && sonRight == 1) {
+                    rightRotate(point);
+                    setRank(point, rank(point) - 1);
+                    setRank(son, rank(son) + 1);
+                    return count + 3;
+                }
+                if (sonRight == 2) {
+                    rightRotate(point);
+                    setRank(point, rank(point) - 2);
+                    count += 3;
+                    point = parent(son);
+                }
+                else {
+                    int freshRoot = right(son);
+                    leftRotate(son);
+                    rightRotate(point);
+                    setRank(freshRoot, rank(freshRoot) + 1);
+                    setRank(point, rank(point) - 2);
+                    setRank(son, rank(son) - 1);
+                    count += 6;
+                    point = parent(freshRoot);
+                }
+            }
+            else {
+                return count;
+            }
+        }
+        return count;
+    }
+
+
+    /**
+     * makes son take the place of child under parent (or the root if parent is NIL)
+     * Complexity : O(1)
+     */
+    private void replaceChild(int parent, int child, int son) {
+        if (parent == NIL) {
+            setRoot(son);
+        }
+        else if (left(parent) == child) {
+            setLeft(parent, son);
+        }
+        else {
+            setRight(parent, son);
+        }
+        if (son != NIL) {
+            setParent(son, parent);
+        }
+    }
+
+
+    /**
+     * rightRotate rotates the subtree of the given node to the right; ranks are left to the caller
+     * Complexity : O(1)
+     */
+    private void rightRotate(int a) {
+        int b = left(a);
+        int e = right(b);
+        replaceChild(parent(a), a, b);
+        setLeft(a, e);
+        if (e != NIL) {
+            setParent(e, a);
+        }
+        setRight(b, a);
+        setParent(a, b);
+        setSize(a, 1 + size(left(a)) + size(right(a)));
+        setSize(b, 1 + size(left(b)) + size(a));
+    }
+
+
+    /**
+     * leftRotate rotates the subtree of the given node to the left; ranks are left to the caller
+     * Complexity : O(1)
+     */
+    private void leftRotate(int a) {
+        int b = right(a);
+        int d = left(b);
+        replaceChild(parent(a), a, b);
+        setRight(a, d);
+        if (d != NIL) {
+            setParent(d, a);
+        }
+        setLeft(b, a);
+        setParent(a, b);
+        setSize(a, 1 + size(left(a)) + size(right(a)));
+        setSize(b, 1 + size(a) + size(right(b)));
+    }
+
+
+    /**
+     * recomputes the min and max header fields by walking the outer spines of the tree
+     * Complexity : O(log(n))
+     */
+    private void resetMinMax() {
+        int min = root();
+        int max = root();
+        if (min != NIL) {
+            while (left(min) != NIL) {
+                min = left(min);
+            }
+            while (right(max) != NIL) {
+                max = right(max);
+            }
+        }
+        buffer.putInt(HEADER_MIN, min);
+        buffer.putInt(HEADER_MAX, max);
+    }
+
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        int i = 0;
+        for (int node = buffer.getInt(HEADER_MIN); node != NIL; node = successor(node)) {
+            arr[i++] = key(node);
+        }
+        return arr;
+    }
+
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[size()];
+        int i = 0;
+        for (int node = buffer.getInt(HEADER_MIN); node != NIL; node = successor(node)) {
+            arr[i++] = value(node);
+        }
+        return arr;
+    }
+
+
+    /**
+     * returns the in-order successor of node, or NIL if node holds the largest key
+     * Complexity : O(log(n)), amortized O(1) over a full traversal
+     */
+    private int successor(int node) {
+        if (right(node) != NIL) {
+            node = right(node);
+            while (left(node) != NIL) {
+                node = left(node);
+            }
+            return node;
+        }
+        int parent = parent(node);
+        while (parent != NIL && right(parent) == node) {
+            node = parent;
+            parent = parent(node);
+        }
+        return parent;
+    }
+
+
+    /**
+     * returns a fresh leaf record, reusing a released one if possible
+     * Complexity : O(1) amortized
+     */
+    private int allocateNode(int key, int value, int parent) throws IOException {
+        int node = buffer.getInt(HEADER_FREE);
+        if (node != NIL) {
+            buffer.putInt(HEADER_FREE, right(node));
+        }
+        else {
+            node = reserve(NODE_BYTES);
+        }
+        buffer.putInt(node + KEY, key);
+        buffer.putInt(node + RANK, 0);
+        buffer.putInt(node + SIZE, 1);
+        buffer.putInt(node + LEFT, NIL);
+        buffer.putInt(node + RIGHT, NIL);
+        buffer.putInt(node + PARENT, parent);
+        buffer.putInt(node + VALUE, value);
+        return node;
+    }
+
+
+    /**
+     * pushes the record of node onto the free list
+     * Complexity : O(1)
+     */
+    private void releaseNode(int node) {
+        buffer.putInt(node + RIGHT, buffer.getInt(HEADER_FREE));
+        buffer.putInt(HEADER_FREE, node);
+    }
+
+
+    /**
+     * appends s to the string heap and returns its offset (NULL_VALUE for null)
+     * Complexity : O(length of s)
+     */
+    private int appendString(String s) throws IOException {
+        if (s == null) {
+            return NULL_VALUE;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int offset = reserve(4 + bytes.length);
+        buffer.putInt(offset, bytes.length);
+        for (int j = 0; j < bytes.length; j++) {
+            buffer.put(offset + 4 + j, bytes[j]);
+        }
+        return offset;
+    }
+
+
+    /**
+     * bumps the end of the used region by bytes, growing the mapping if needed, and
+     * returns the start of the reserved space
+     * Complexity : O(1) amortized
+     */
+    private int reserve(int bytes) throws IOException {
+        int offset = buffer.getInt(HEADER_END);
+        long end = (long) offset + bytes;
+        if (end > Integer.MAX_VALUE) {
+            throw new IOException("AVL tree file is full");
+        }
+        if (end > buffer.capacity()) {
+            long capacity = Math.min(Integer.MAX_VALUE, Math.max(end, 2L * buffer.capacity()));
+            buffer.force();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        buffer.putInt(HEADER_END, (int) end);
+        return offset;
+    }
+
+
+    private String value(int node) {
+        int offset = buffer.getInt(node + VALUE);
+        if (offset == NULL_VALUE) {
+            return null;
+        }
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        for (int j = 0; j < bytes.length; j++) {
+            bytes[j] = buffer.get(offset + 4 + j);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int root() {
+        return buffer.getInt(HEADER_ROOT);
+    }
+
+    private void setRoot(int node) {
+        buffer.putInt(HEADER_ROOT, node);
+    }
+
+    private int key(int node) {
+        return buffer.getInt(node + KEY);
+    }
+
+    private int rank(int node) {
+        return buffer.getInt(node + RANK);
+    }
+
+    private void setRank(int node, int rank) {
+        buffer.putInt(node + RANK, rank);
+    }
+
+    private int size(int node) {
+        return buffer.getInt(node + SIZE);
+    }
+
+    private void setSize(int node, int size) {
+        buffer.putInt(node + SIZE, size);
+    }
+
+    private int left(int node) {
+        return buffer.getInt(node + LEFT);
+    }
+
+    private void setLeft(int node, int son) {
+        buffer.putInt(node + LEFT, son);
+    }
+
+    private int right(int node) {
+        return buffer.getInt(node + RIGHT);
+    }
+
+    private void setRight(int node, int son) {
+        buffer.putInt(node + RIGHT, son);
+    }
+
+    private int parent(int node) {
+        return buffer.getInt(node + PARENT);
+    }
+
+    private void setParent(int node, int parent) {
+        buffer.putInt(node + PARENT, parent);
+    }
+}
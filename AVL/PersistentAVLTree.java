@@ -0,0 +1,383 @@
+/**
+ *
+ * PersistentAVLTree
+ *
+ * A persistent AVL Tree with distinct integer keys and info. Nodes are immutable:
+ * insert and delete copy only the nodes on the path from the root to the change
+ * (plus the few nodes a rotation rebuilds) and share everything else with the
+ * previous version. snapshot() therefore costs O(1), and a snapshot stays
+ * readable, from any thread, while this tree keeps changing.
+ *
+ * A single PersistentAVLTree must not be updated by several threads at once.
+ *
+ */
+
+public class PersistentAVLTree {
+
+    private volatile Node root;
+
+    /**
+     * creates an empty tree
+     */
+    public PersistentAVLTree() {
+        this(null);
+    }
+
+    PersistentAVLTree(Node root) {
+        this.root = root;
+    }
+
+
+    /**
+     * public PersistentAVLTree snapshot()
+     *
+     * returns a tree holding the current version. Later updates to either tree
+     * are invisible to the other.
+     * Complexity : O(1)
+     */
+    public PersistentAVLTree snapshot() {
+        return new PersistentAVLTree(root);
+    }
+
+
+    /**
+     * public boolean empty()
+     * returns true if and only if the tree is empty
+     *
+     * Complexity : O(1)
+     */
+    public boolean empty() {
+        return root == null;
+    }
+
+
+    /**
+     * public int size()
+     *
+     * Returns the number of nodes in the tree.
+     * Complexity: O(1)
+     */
+    public int size() {
+        return size(root);
+    }
+
+
+    /**
+     * public int height()
+     *
+     * Returns the height of the tree (-1 for an empty tree), which bounds the
+     * number of nodes an update copies.
+     * Complexity: O(1)
+     */
+    public int height() {
+        return rank(root);
+    }
+
+
+    /**
+     * public String search(int k)
+     *
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     *
+     * Complexity : O(log(n))
+     */
+    public String search(int k) {
+        Node node = find(root, k);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public String min()
+     *
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * Complexity : O(log(n))
+     */
+    public String min() {
+        Node node = first(root);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public String max()
+     *
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * Complexity : O(log(n))
+     */
+    public String max() {
+        Node node = last(root);
+        return node == null ? null : node.value;
+    }
+
+
+    /**
+     * public int insert(int k, String i)
+     *
+     * inserts an item with key k and info i, creating a new version of the tree.
+     * returns the number of nodes created (at most a small constant above the height),
+     * or -1 if an item with key k already exists in the tree.
+     * Complexity : O(log(n))
+     */
+    public int insert(int k, String i) {
+        PathCopy path = new PathCopy();
+        Node current = root;
+        Node fresh = path.insert(current, k, i);
+        if (fresh == current) {
+            return -1;
+        }
+        root = fresh;
+        return path.copied;
+    }
+
+
+    /**
+     * public int delete(int k)
+     *
+     * deletes the item with key k, creating a new version of the tree.
+     * returns the number of nodes created, or -1 if an item with key k was not found.
+     * Complexity : O(log(n))
+     */
+    public int delete(int k) {
+        PathCopy path = new PathCopy();
+        Node current = root;
+        Node fresh = path.delete(current, k);
+        if (fresh == current) {
+            return -1;
+        }
+        root = fresh;
+        return path.copied;
+    }
+
+
+    /**
+     * public int[] keysToArray()
+     *
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public int[] keysToArray() {
+        Node current = root;
+        int[] arr = new int[size(current)];
+        fillKeys(current, arr, 0);
+        return arr;
+    }
+
+
+    /**
+     * public String[] infoToArray()
+     *
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Complexity : O(n)
+     */
+    public String[] infoToArray() {
+        Node current = root;
+        String[] arr = new String[size(current)];
+        fillInfo(current, arr, 0);
+        return arr;
+    }
+
+
+    /**
+     * writes the keys of the subtree of node into arr starting at index, returns the next free index
+     * Complexity : O(size of the subtree)
+     */
+    static int fillKeys(Node node, int[] arr, int index) {
+        while (node != null) {
+            index = fillKeys(node.left, arr, index);
+            arr[index++] = node.key;
+            node = node.right;
+        }
+        return index;
+    }
+
+
+    /**
+     * writes the info of the subtree of node into arr starting at index, returns the next free index
+     * Complexity : O(size of the subtree)
+     */
+    static int fillInfo(Node node, String[] arr, int index) {
+        while (node != null) {
+            index = fillInfo(node.left, arr, index);
+            arr[index++] = node.value;
+            node = node.right;
+        }
+        return index;
+    }
+
+
+    /**
+     * returns the node with key k in the subtree of node, or null
+     * Complexity : O(log(n))
+     */
+    static Node find(Node node, int k) {
+        while (node != null && k != node.key) {
+            node = k < node.key ? node.left : node.right;
+        }
+        return node;
+    }
+
+    static Node first(Node node) {
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    static Node last(Node node) {
+        if (node != null) {
+            while (node.right != null) {
+                node = node.right;
+            }
+        }
+        return node;
+    }
+
+
+    /**
+     * PathCopy
+     *
+     * One update: builds the new version of a tree from an old root and counts the
+     * nodes it creates. The old version is never modified.
+     */
+    static final class PathCopy {
+        int copied;
+
+        /**
+         * returns the new version of the subtree of node with (k, i) inserted,
+         * or node itself if k is already there
+         * Complexity : O(log(n))
+         */
+        Node insert(Node node, int k, String i) {
+            if (node == null) {
+                return make(k, i, null, null);
+            }
+            if (k == node.key) {
+                return node;
+            }
+            if (k < node.key) {
+                Node left = insert(node.left, k, i);
+                return left == node.left ? node : balance(node.key, node.value, left, node.right);
+            }
+            Node right = insert(node.right, k, i);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+
+
+        /**
+         * returns the new version of the subtree of node without k, or node itself if k is not there
+         * Complexity : O(log(n))
+         */
+        Node delete(Node node, int k) {
+            if (node == null) {
+                return null;
+            }
+            if (k < node.key) {
+                Node left = delete(node.left, k);
+                return left == node.left ? node : balance(node.key, node.value, left, node.right);
+            }
+            if (k > node.key) {
+                Node right = delete(node.right, k);
+                return right == node.right ? node : balance(node.key, node.value, node.left, right);
+            }
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+            return balance(successor.key, successor.value, node.left, deleteMin(node.right));
+        }
+
+
+        /**
+         * returns the new version of the subtree of node without its smallest key
+         * Complexity : O(log(n))
+         */
+        private Node deleteMin(Node node) {
+            if (node.left == null) {
+                return node.right;
+            }
+            return balance(node.key, node.value, deleteMin(node.left), node.right);
+        }
+
+
+        /**
+         * creates the node (key, value) over left and right, rotating once or twice if
+         * their ranks differ by two
+         * Complexity : O(1)
+         */
+        private Node balance(int key, String value, Node left, Node right) {
+            int leftRank = rank(left);
+            int rightRank = rank(right);
+            if (leftRank > rightRank + 1) {
+                if (rank(left.left) >= rank(left.right)) {
+                    return make(left.key, left.value, left.left, make(key, value, left.right, right));
+                }
+                Node freshRoot = left.right;
+                return make(freshRoot.key, freshRoot.value,
+                        make(left.key, left.value, left.left, freshRoot.left),
+                        make(key, value, freshRoot.right, right));
+            }
+            if (rightRank > leftRank + 1) {
+                if (rank(right.right) >= rank(right.left)) {
+                    return make(right.key, right.value, make(key, value, left, right.left), right.right);
+                }
+                Node freshRoot = right.left;
+                return make(freshRoot.key, freshRoot.value,
+                        make(key, value, left, freshRoot.left),
+                        make(right.key, right.value, freshRoot.right, right.right));
+            }
+            return make(key, value, left, right);
+        }
+
+        private Node make(int key, String value, Node left, Node right) {
+            copied++;
+            return new Node(key, value, left, right);
+        }
+    }
+
+    static int rank(Node node) {
+        return node == null ? -1 : node.rank;
+    }
+
+    static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+
+    /**
+     * Node
+     *
+     * An immutable node; rank and size are computed once from the sons.
+     */
+    static final class Node {
+        final int key;
+        final String value;
+        final Node left;
+        final Node right;
+        final int rank;
+        final int size;
+
+        Node(int key, String value, Node left, Node right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.rank = Math.max(PersistentAVLTree.rank(left), PersistentAVLTree.rank(right)) + 1;
+            this.size = PersistentAVLTree.size(left) + PersistentAVLTree.size(right) + 1;
+        }
+    }
+}
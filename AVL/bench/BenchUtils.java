@@ -0,0 +1,127 @@
+import java.util.Random;
+
+/**
+ *
+ * BenchUtils
+ *
+ * Small helpers shared by the benchmarks: key generation, heap measurement
+ * and result printing. Only standard Java libraries are used.
+ *
+ */
+public class BenchUtils {
+    private static final java.lang.management.ThreadMXBean THREADS =
+            java.lang.management.ManagementFactory.getThreadMXBean();
+
+    private BenchUtils() {}
+
+    /**
+     * returns the keys 0..n-1 in ascending order
+     */
+    public static int[] sequentialKeys(int n) {
+        int[] keys = new int[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = i;
+        }
+        return keys;
+    }
+
+    /**
+     * returns a random permutation of the keys 0..n-1 (Fisher-Yates, fixed seed)
+     */
+    public static int[] randomKeys(int n) {
+        int[] keys = sequentialKeys(n);
+        Random random = new Random(42);
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = keys[i];
+            keys[i] = keys[j];
+            keys[j] = tmp;
+        }
+        return keys;
+    }
+
+    /**
+     * returns m keys out of 0..n-1 taken alternately from the low and the high end:
+     * 0, n-1, 1, n-2, ... (m must not exceed n)
+     */
+    public static int[] alternatingKeys(int n, int m) {
+        int[] keys = new int[m];
+        for (int i = 0; i < m; i++) {
+            keys[i] = i % 2 == 0 ? i / 2 : n - 1 - i / 2;
+        }
+        return keys;
+    }
+
+    /**
+     * returns m keys out of 0..n-1 drawn from a Zipfian distribution with exponent 0.99
+     * (the YCSB generator), so a few keys repeat very often. The popular keys are
+     * scattered over the key range through a fixed random permutation.
+     */
+    public static int[] zipfianKeys(int n, int m) {
+        double theta = 0.99;
+        double zetan = 0;
+        for (int i = 1; i <= n; i++) {
+            zetan += 1 / Math.pow(i, theta);
+        }
+        double zeta2 = 1 + 1 / Math.pow(2, theta);
+        double alpha = 1 / (1 - theta);
+        double eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta2 / zetan);
+        int[] scatter = randomKeys(n);
+        Random random = new Random(42);
+        int[] keys = new int[m];
+        for (int i = 0; i < m; i++) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            int rank;
+            if (uz < 1) {
+                rank = 0;
+            } else if (uz < zeta2) {
+                rank = 1;
+            } else {
+                rank = (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+            }
+            keys[i] = scatter[rank];
+        }
+        return keys;
+    }
+
+    /**
+     * returns the number of bytes the current thread has allocated so far,
+     * or 0 if the JVM does not report it
+     */
+    public static long allocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * returns the used heap in bytes after asking the JVM to collect garbage
+     */
+    public static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * returns the number of operations per second for ops operations that took nanos
+     */
+    public static double opsPerSecond(long ops, long nanos) {
+        return ops * 1e9 / nanos;
+    }
+
+    public static void printResult(String name, int n, String metric, double value) {
+        System.out.printf("%-28s n=%-10d %-14s %,16.1f%n", name, n, metric, value);
+    }
+}
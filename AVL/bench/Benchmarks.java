@@ -0,0 +1,1076 @@
+/**
+ *
+ * Benchmarks
+ *
+ * Throughput and memory measurements for AVLTree.
+ * Usage: java -Xmx4g Benchmarks <benchmark> [n]
+ *
+ */
+public class Benchmarks {
+
+    static final String VALUE = "v";
+
+    public static void main(String[] args) throws Exception {
+        String name = args.length > 0 ? args[0] : "nodeLayout";
+        int n = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        switch (name) {
+            case "nodeLayout":
+                nodeLayout(n);
+                break;
+            case "arrayLayout":
+                arrayLayout(n);
+                break;
+            case "mappedReopen":
+                mappedReopen(n);
+                break;
+            case "bulkLoad":
+                bulkLoad(n);
+                break;
+            case "batchInsert":
+                batchInsert(n);
+                break;
+            case "split":
+                split(n);
+                break;
+            case "persistentUpdates":
+                persistentUpdates(n);
+                break;
+            case "concurrentMix":
+                concurrentMix(n);
+                break;
+            case "insertPattern":
+                insertPattern(n);
+                break;
+            case "mapFamily":
+                mapFamily(n);
+                break;
+            case "rebalance":
+                rebalance(n);
+                break;
+            case "smallTrees":
+                smallTrees(n);
+                break;
+            case "frozenSearch":
+                frozenSearch(n);
+                break;
+            case "snapshot":
+                snapshot(n);
+                break;
+            case "wal":
+                wal(n);
+                break;
+            case "parallelCopy":
+                parallelCopy(n);
+                break;
+            case "streams":
+                streams(n);
+                break;
+            case "aggregates":
+                aggregates(n);
+                break;
+            case "intervals":
+                intervals(n);
+                break;
+            case "setOps":
+                setOps(n, n);
+                setOps(n, Math.max(1, n / 10));
+                setOps(n, Math.max(1, n / 1000));
+                break;
+            default:
+                System.out.println("unknown benchmark: " + name);
+        }
+    }
+
+    /**
+     * measures heap bytes per node and insert/search throughput on a tree with n random keys.
+     * all items share one info string so only the node layout itself is measured.
+     */
+    static void nodeLayout(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        long before = BenchUtils.usedHeap();
+        AVLTree tree = new AVLTree();
+        long start = System.nanoTime();
+        for (int k : keys) {
+            tree.insert(k, VALUE);
+        }
+        long insertNanos = System.nanoTime() - start;
+        long after = BenchUtils.usedHeap();
+
+        int found = 0;
+        start = System.nanoTime();
+        for (int k : keys) {
+            if (tree.search(k) != null) {
+                found++;
+            }
+        }
+        long searchNanos = System.nanoTime() - start;
+        if (found != n) {
+            throw new IllegalStateException("search missed " + (n - found) + " keys");
+        }
+
+        BenchUtils.printResult("nodeLayout", n, "bytes/node", (after - before) / (double) n);
+        BenchUtils.printResult("nodeLayout insert", n, "ops/s", BenchUtils.opsPerSecond(n, insertNanos));
+        BenchUtils.printResult("nodeLayout search", n, "ops/s", BenchUtils.opsPerSecond(n, searchNanos));
+    }
+
+    /**
+     * the nodeLayout measurement for ArrayAVLTree, whose nodes are slots in parallel arrays
+     */
+    static void arrayLayout(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        long before = BenchUtils.usedHeap();
+        ArrayAVLTree tree = new ArrayAVLTree(n + 1);
+        long start = System.nanoTime();
+        for (int k : keys) {
+            tree.insert(k, VALUE);
+        }
+        long insertNanos = System.nanoTime() - start;
+        long after = BenchUtils.usedHeap();
+
+        int found = 0;
+        start = System.nanoTime();
+        for (int k : keys) {
+            if (tree.search(k) != null) {
+                found++;
+            }
+        }
+        long searchNanos = System.nanoTime() - start;
+        if (found != n) {
+            throw new IllegalStateException("search missed " + (n - found) + " keys");
+        }
+
+        BenchUtils.printResult("arrayLayout", n, "bytes/node", (after - before) / (double) n);
+        BenchUtils.printResult("arrayLayout insert", n, "ops/s", BenchUtils.opsPerSecond(n, insertNanos));
+        BenchUtils.printResult("arrayLayout search", n, "ops/s", BenchUtils.opsPerSecond(n, searchNanos));
+    }
+
+    /**
+     * compares reopening a MappedAVLTree file with rebuilding an AVLTree by replaying n inserts
+     */
+    static void mappedReopen(int n) throws java.io.IOException {
+        int[] keys = BenchUtils.randomKeys(n);
+        java.io.File file = java.io.File.createTempFile("avl", ".map");
+        file.deleteOnExit();
+        MappedAVLTree mapped = MappedAVLTree.open(file.toPath());
+        for (int k : keys) {
+            mapped.insert(k, VALUE);
+        }
+        mapped.close();
+
+        long start = System.nanoTime();
+        AVLTree tree = new AVLTree();
+        for (int k : keys) {
+            tree.insert(k, VALUE);
+        }
+        long rebuildNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        mapped = MappedAVLTree.open(file.toPath());
+        String first = mapped.search(keys[0]);
+        long reopenNanos = System.nanoTime() - start;
+        if (first == null || mapped.size() != n) {
+            throw new IllegalStateException("reopened tree is incomplete");
+        }
+
+        start = System.nanoTime();
+        for (int k : keys) {
+            mapped.search(k);
+        }
+        long searchNanos = System.nanoTime() - start;
+        mapped.close();
+
+        BenchUtils.printResult("mappedReopen rebuild", n, "ms", rebuildNanos / 1e6);
+        BenchUtils.printResult("mappedReopen reopen", n, "ms", reopenNanos / 1e6);
+        BenchUtils.printResult("mappedReopen search", n, "ops/s", BenchUtils.opsPerSecond(n, searchNanos));
+    }
+
+    /**
+     * compares AVLTree.fromSorted with n inserts of the same sorted keys
+     */
+    static void bulkLoad(int n) {
+        int[] keys = BenchUtils.sequentialKeys(n);
+        String[] values = new String[n];
+        java.util.Arrays.fill(values, VALUE);
+
+        long start = System.nanoTime();
+        AVLTree inserted = new AVLTree();
+        for (int k : keys) {
+            inserted.insert(k, VALUE);
+        }
+        long insertNanos = System.nanoTime() - start;
+        inserted = null;
+
+        start = System.nanoTime();
+        AVLTree loaded = AVLTree.fromSorted(keys, values);
+        long loadNanos = System.nanoTime() - start;
+        if (loaded.size() != n) {
+            throw new IllegalStateException("fromSorted lost keys");
+        }
+
+        BenchUtils.printResult("bulkLoad insert loop", n, "ms", insertNanos / 1e6);
+        BenchUtils.printResult("bulkLoad fromSorted", n, "ms", loadNanos / 1e6);
+    }
+
+    /**
+     * compares insertAll with a loop of single inserts for batches of random new keys
+     * merged into a tree that already holds n keys
+     */
+    static void batchInsert(int n) {
+        int[] batchSizes = {10000, 100000, 1000000};
+        for (int m : batchSizes) {
+            batchInsertRound(n, m, false); // warms up the JIT
+        }
+        for (int m : batchSizes) {
+            batchInsertRound(n, m, true);
+        }
+    }
+
+    private static void batchInsertRound(int n, int m, boolean print) {
+        int[] evens = new int[n];
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            evens[i] = 2 * i;
+            values[i] = VALUE;
+        }
+        int[] batch = BenchUtils.randomKeys(m);
+        String[] batchValues = new String[m];
+        for (int i = 0; i < m; i++) {
+            batch[i] = (int) ((long) batch[i] * n / m) * 2 + 1;
+            batchValues[i] = VALUE;
+        }
+
+        AVLTree tree = AVLTree.fromSorted(evens, values);
+        long start = System.nanoTime();
+        for (int i = 0; i < m; i++) {
+            tree.insert(batch[i], batchValues[i]);
+        }
+        long loopNanos = System.nanoTime() - start;
+
+        tree = AVLTree.fromSorted(evens, values);
+        start = System.nanoTime();
+        tree.insertAll(batch, batchValues);
+        long batchNanos = System.nanoTime() - start;
+        if (tree.size() != n + m) {
+            throw new IllegalStateException("insertAll lost keys");
+        }
+
+        if (print) {
+            BenchUtils.printResult("batchInsert loop m=" + m, n, "ops/s", BenchUtils.opsPerSecond(m, loopNanos));
+            BenchUtils.printResult("batchInsert insertAll m=" + m, n, "ops/s", BenchUtils.opsPerSecond(m, batchNanos));
+        }
+    }
+
+    /**
+     * measures the average cost of split(x) at random keys on trees of 1K keys up to n keys.
+     * every split consumes its tree, so a fresh tree is bulk loaded (untimed) before each one.
+     */
+    static void split(int n) {
+        java.util.Random random = new java.util.Random(11);
+        for (int size = 1000; size <= n; size *= 10) {
+            int[] keys = BenchUtils.sequentialKeys(size);
+            String[] values = new String[size];
+            java.util.Arrays.fill(values, VALUE);
+            int rounds = size >= 1000000 ? 10 : 200;
+            long nanos = 0;
+            for (int round = -rounds; round < rounds; round++) { // negative rounds warm up the JIT
+                AVLTree tree = AVLTree.fromSorted(keys, values);
+                int x = random.nextInt(size);
+                long start = System.nanoTime();
+                AVLTree[] parts = tree.split(x);
+                long elapsed = System.nanoTime() - start;
+                if (round >= 0) {
+                    nanos += elapsed;
+                }
+                if (parts[0].size() != x || parts[1].size() != size - x - 1) {
+                    throw new IllegalStateException("split lost keys");
+                }
+            }
+            BenchUtils.printResult("split", size, "us/split", nanos / 1e3 / rounds);
+        }
+    }
+
+    /**
+     * measures how much heap each retained version of a PersistentAVLTree costs: n keys are loaded,
+     * then 100K inserts are applied while a snapshot of every version is kept alive.
+     */
+    static void persistentUpdates(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        long before = BenchUtils.usedHeap();
+        PersistentAVLTree tree = new PersistentAVLTree();
+        for (int i = 0; i < n; i++) {
+            tree.insert(2 * (keys[i] / 2), VALUE);
+        }
+        long loaded = BenchUtils.usedHeap();
+        double bytesPerNode = (loaded - before) / (double) tree.size();
+
+        int updates = 100000;
+        PersistentAVLTree[] versions = new PersistentAVLTree[updates];
+        java.util.Random random = new java.util.Random(5);
+        long copied = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < updates; i++) {
+            copied += Math.max(0, tree.insert(2 * random.nextInt(Integer.MAX_VALUE / 2) + 1, VALUE));
+            versions[i] = tree.snapshot();
+        }
+        long updateNanos = System.nanoTime() - start;
+        long after = BenchUtils.usedHeap();
+        double bytesPerUpdate = (after - loaded) / (double) updates;
+
+        start = System.nanoTime();
+        int[] copy = versions[updates / 2].keysToArray();
+        long copyNanos = System.nanoTime() - start;
+
+        BenchUtils.printResult("persistentUpdates height", n, "levels", tree.height());
+        BenchUtils.printResult("persistentUpdates copied", n, "nodes/update", copied / (double) updates);
+        BenchUtils.printResult("persistentUpdates retained", n, "nodes/update", bytesPerUpdate / bytesPerNode);
+        BenchUtils.printResult("persistentUpdates retained", n, "bytes/update", bytesPerUpdate);
+        BenchUtils.printResult("persistentUpdates insert+snapshot", n, "ops/s", BenchUtils.opsPerSecond(updates, updateNanos));
+        BenchUtils.printResult("persistentUpdates keysToArray copy", copy.length, "ms", copyNanos / 1e6);
+    }
+
+    /**
+     * runs a read-mostly mix (90% search / 5% insert / 5% delete) and a write-heavy one
+     * (50% search / 25% insert / 25% delete) over 2n keys on 1 to 16 threads for one second each,
+     * comparing ConcurrentAVLTree with an AVLTree behind a global lock. Also reports how many
+     * path copies ConcurrentAVLTree threw away per thousand writes because another writer published first.
+     */
+    static void concurrentMix(int n) throws InterruptedException {
+        concurrentMix(n, 10);
+        concurrentMix(n, 50);
+    }
+
+    private static void concurrentMix(int n, int writePercent) throws InterruptedException {
+        int[] keys = BenchUtils.randomKeys(n);
+        String mix = "concurrentMix writes=" + writePercent + "% ";
+        for (int threads = 1; threads <= 16; threads *= 2) {
+            final ConcurrentAVLTree concurrent = new ConcurrentAVLTree();
+            final AVLTree locked = new AVLTree();
+            for (int k : keys) {
+                concurrent.insert(k % (2 * n), VALUE);
+                locked.insert(k % (2 * n), VALUE);
+            }
+            long failedBefore = concurrent.failedPublishes();
+            long concurrentOps = runMix(threads, 2 * n, writePercent, new MixTarget() {
+                public void search(int k) {
+                    concurrent.search(k);
+                }
+
+                public void insert(int k) {
+                    concurrent.insert(k, VALUE);
+                }
+
+                public void delete(int k) {
+                    concurrent.delete(k);
+                }
+            });
+            double failedPerKiloWrite = (concurrent.failedPublishes() - failedBefore) * 1000.0 / (concurrentOps * writePercent / 100.0);
+            long lockedOps = runMix(threads, 2 * n, writePercent, new MixTarget() {
+                public void search(int k) {
+                    synchronized (locked) {
+                        locked.search(k);
+                    }
+                }
+
+                public void insert(int k) {
+                    synchronized (locked) {
+                        locked.insert(k, VALUE);
+                    }
+                }
+
+                public void delete(int k) {
+                    synchronized (locked) {
+                        locked.delete(k);
+                    }
+                }
+            });
+            BenchUtils.printResult(mix + "ConcurrentAVLTree t=" + threads, n, "ops/s", concurrentOps);
+            BenchUtils.printResult(mix + "ConcurrentAVLTree t=" + threads, n, "failed/1K writes", failedPerKiloWrite);
+            BenchUtils.printResult(mix + "synchronized AVLTree t=" + threads, n, "ops/s", lockedOps);
+        }
+    }
+
+    interface MixTarget {
+        void search(int k);
+
+        void insert(int k);
+
+        void delete(int k);
+    }
+
+    private static long runMix(int threads, final int keySpace, final int writePercent, final MixTarget target) throws InterruptedException {
+        final long deadline = System.nanoTime() + 1000000000L;
+        final long[] counts = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers[t] = new Thread(new Runnable() {
+                public void run() {
+                    java.util.Random random = new java.util.Random(id);
+                    long ops = 0;
+                    while ((ops & 1023) != 0 || System.nanoTime() < deadline) {
+                        int k = random.nextInt(keySpace);
+                        int choice = random.nextInt(100);
+                        if (choice < writePercent / 2) {
+                            target.insert(k);
+                        } else if (choice < writePercent) {
+                            target.delete(k);
+                        } else {
+                            target.search(k);
+                        }
+                        ops++;
+                    }
+                    counts[id] = ops;
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long total = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            total += counts[t];
+        }
+        return total;
+    }
+
+    /**
+     * measures insert throughput into an empty AVLTree for n sequential and n random keys,
+     * keeping the best of five rounds of each
+     */
+    static void insertPattern(int n) {
+        int[][] patterns = {BenchUtils.sequentialKeys(n), BenchUtils.randomKeys(n)};
+        String[] names = {"sequential", "random"};
+        for (int p = 0; p < patterns.length; p++) {
+            long best = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                AVLTree tree = new AVLTree();
+                long start = System.nanoTime();
+                for (int k : patterns[p]) {
+                    tree.insert(k, VALUE);
+                }
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            BenchUtils.printResult("insertPattern " + names[p], n, "ops/s", BenchUtils.opsPerSecond(n, best));
+        }
+    }
+
+    /**
+     * compares insert and search throughput and bytes per entry of AVLTree, the primitive maps,
+     * the comparator-based AVLMap with boxed Integer keys and java.util.TreeMap on n random keys
+     */
+    static void mapFamily(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        String[] names = {"AVLTree", "IntAVLMap", "LongAVLMap", "DoubleAVLMap", "AVLMap<Integer>", "TreeMap<Integer>"};
+        for (int round = 0; round < 2; round++) { // the first round warms up the JIT
+            for (String name : names) {
+                long before = BenchUtils.usedHeap();
+                long start = System.nanoTime();
+                Object map = fillMap(name, keys);
+                long insertNanos = System.nanoTime() - start;
+                long after = BenchUtils.usedHeap();
+                start = System.nanoTime();
+                int found = searchMap(name, map, keys);
+                long searchNanos = System.nanoTime() - start;
+                if (found != n) {
+                    throw new IllegalStateException(name + " missed " + (n - found) + " keys");
+                }
+                if (round == 1) {
+                    BenchUtils.printResult("mapFamily " + name, n, "bytes/entry", (after - before) / (double) n);
+                    BenchUtils.printResult("mapFamily " + name + " insert", n, "ops/s", BenchUtils.opsPerSecond(n, insertNanos));
+                    BenchUtils.printResult("mapFamily " + name + " search", n, "ops/s", BenchUtils.opsPerSecond(n, searchNanos));
+                }
+            }
+        }
+    }
+
+    private static Object fillMap(String name, int[] keys) {
+        switch (name) {
+            case "AVLTree":
+                AVLTree tree = new AVLTree();
+                for (int k : keys) {
+                    tree.insert(k, VALUE);
+                }
+                return tree;
+            case "IntAVLMap":
+                IntAVLMap<String> ints = new IntAVLMap<String>();
+                for (int k : keys) {
+                    ints.put(k, VALUE);
+                }
+                return ints;
+            case "LongAVLMap":
+                LongAVLMap<String> longs = new LongAVLMap<String>();
+                for (int k : keys) {
+                    longs.put(k, VALUE);
+                }
+                return longs;
+            case "DoubleAVLMap":
+                DoubleAVLMap<String> doubles = new DoubleAVLMap<String>();
+                for (int k : keys) {
+                    doubles.put(k, VALUE);
+                }
+                return doubles;
+            case "AVLMap<Integer>":
+                AVLMap<Integer, String> boxed = new AVLMap<Integer, String>(java.util.Comparator.<Integer>naturalOrder());
+                for (int k : keys) {
+                    boxed.put(k, VALUE);
+                }
+                return boxed;
+            default:
+                java.util.TreeMap<Integer, String> treeMap = new java.util.TreeMap<Integer, String>();
+                for (int k : keys) {
+                    treeMap.put(k, VALUE);
+                }
+                return treeMap;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int searchMap(String name, Object map, int[] keys) {
+        int found = 0;
+        switch (name) {
+            case "AVLTree":
+                for (int k : keys) {
+                    found += ((AVLTree) map).search(k) != null ? 1 : 0;
+                }
+                return found;
+            case "IntAVLMap":
+                for (int k : keys) {
+                    found += ((IntAVLMap<String>) map).get(k) != null ? 1 : 0;
+                }
+                return found;
+            case "LongAVLMap":
+                for (int k : keys) {
+                    found += ((LongAVLMap<String>) map).get(k) != null ? 1 : 0;
+                }
+                return found;
+            case "DoubleAVLMap":
+                for (int k : keys) {
+                    found += ((DoubleAVLMap<String>) map).get(k) != null ? 1 : 0;
+                }
+                return found;
+            case "AVLMap<Integer>":
+                for (int k : keys) {
+                    found += ((AVLMap<Integer, String>) map).get(k) != null ? 1 : 0;
+                }
+                return found;
+            default:
+                for (int k : keys) {
+                    found += ((java.util.TreeMap<Integer, String>) map).get(k) != null ? 1 : 0;
+                }
+                return found;
+        }
+    }
+
+    /**
+     * inserts n random keys into an empty AVLTree and deletes them again in another random order,
+     * 30 times after 20 warm-up rounds, and prints the median insert and delete throughput.
+     * with a small n the tree stays in cache, so the rebalancing code itself dominates.
+     */
+    static void rebalance(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        int[] deleteOrder = BenchUtils.randomKeys(n);
+        for (int i = 0; i < n; i++) {
+            deleteOrder[i] = keys[deleteOrder[i]];
+        }
+        int rounds = 30;
+        double[] inserts = new double[rounds];
+        double[] deletes = new double[rounds];
+        for (int round = -20; round < rounds; round++) {
+            AVLTree tree = new AVLTree();
+            long start = System.nanoTime();
+            insertEach(tree, keys);
+            long insertNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            deleteEach(tree, deleteOrder);
+            long deleteNanos = System.nanoTime() - start;
+            if (!tree.empty()) {
+                throw new IllegalStateException("delete left keys behind");
+            }
+            if (round >= 0) {
+                inserts[round] = BenchUtils.opsPerSecond(n, insertNanos);
+                deletes[round] = BenchUtils.opsPerSecond(n, deleteNanos);
+            }
+        }
+        java.util.Arrays.sort(inserts);
+        java.util.Arrays.sort(deletes);
+        BenchUtils.printResult("rebalance insert median", n, "ops/s", inserts[rounds / 2]);
+        BenchUtils.printResult("rebalance delete median", n, "ops/s", deletes[rounds / 2]);
+    }
+
+    private static void insertEach(AVLTree tree, int[] keys) {
+        for (int k : keys) {
+            tree.insert(k, VALUE);
+        }
+    }
+
+    private static void deleteEach(AVLTree tree, int[] keys) {
+        for (int k : keys) {
+            tree.delete(k);
+        }
+    }
+
+    /**
+     * measures heap bytes per tree for n empty AVLTrees and for n AVLTrees holding one key each
+     */
+    static void smallTrees(int n) {
+        for (int keys = 0; keys <= 1; keys++) {
+            long before = BenchUtils.usedHeap();
+            AVLTree[] trees = new AVLTree[n];
+            for (int i = 0; i < n; i++) {
+                trees[i] = new AVLTree();
+                if (keys == 1) {
+                    trees[i].insert(i, VALUE);
+                }
+            }
+            long after = BenchUtils.usedHeap();
+            BenchUtils.printResult("smallTrees keys=" + keys, trees.length, "bytes/tree", (after - before) / (double) n);
+        }
+    }
+
+    /**
+     * compares search latency on the node tree and on the frozen index of the same tree.
+     * The tree is built by inserting keys in random order, so its nodes are scattered over
+     * the heap as in a long-lived tree; half of the probes miss.
+     */
+    static void frozenSearch(int n) {
+        AVLTree tree = new AVLTree();
+        for (int k : BenchUtils.randomKeys(n)) {
+            tree.insert(2 * k, VALUE);
+        }
+        int probes = 1000000;
+        int[] keys = new int[probes];
+        java.util.Random random = new java.util.Random(42);
+        for (int i = 0; i < probes; i++) {
+            keys[i] = random.nextInt(2 * n);
+        }
+        int rounds = 7;
+        double[] pointer = new double[rounds];
+        double[] frozen = new double[rounds];
+        double[] freeze = new double[rounds];
+        for (int round = -3; round < rounds; round++) {
+            long start = System.nanoTime();
+            long found = searchEach(tree, keys);
+            long pointerNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            tree.freeze();
+            long freezeNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            found -= searchEach(tree, keys);
+            long frozenNanos = System.nanoTime() - start;
+            tree.delete(-1); // a mutation thaws the tree for the next round
+            if (found != 0 || tree.isFrozen()) {
+                throw new IllegalStateException("frozen search disagrees with the tree");
+            }
+            if (round >= 0) {
+                pointer[round] = pointerNanos / (double) probes;
+                frozen[round] = frozenNanos / (double) probes;
+                freeze[round] = freezeNanos / 1e6;
+            }
+        }
+        java.util.Arrays.sort(pointer);
+        java.util.Arrays.sort(frozen);
+        java.util.Arrays.sort(freeze);
+        BenchUtils.printResult("frozenSearch nodes median", n, "ns/search", pointer[rounds / 2]);
+        BenchUtils.printResult("frozenSearch frozen median", n, "ns/search", frozen[rounds / 2]);
+        BenchUtils.printResult("frozenSearch freeze median", n, "ms", freeze[rounds / 2]);
+    }
+
+    private static long searchEach(AVLTree tree, int[] keys) {
+        long found = 0;
+        for (int k : keys) {
+            if (tree.search(k) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * writes a tree of n items to a temporary file with writeTo and reads it back with
+     * readFrom, through a stream and through a channel. Reports time, file size and the
+     * bytes the writing thread allocated, next to what keysToArray + infoToArray allocate.
+     */
+    static void snapshot(int n) throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("avl", ".snapshot");
+        try {
+            int[] keys = new int[n];
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = 3 * i;
+                values[i] = VALUE;
+            }
+            AVLTree tree = AVLTree.fromSorted(keys, values);
+            keys = null;
+            values = null;
+            long allocated = BenchUtils.allocatedBytes();
+            int exported = tree.keysToArray().length + tree.infoToArray().length;
+            BenchUtils.printResult("snapshot toArray alloc", exported / 2, "bytes", BenchUtils.allocatedBytes() - allocated);
+            for (int channel = 0; channel <= 1; channel++) {
+                String via = channel == 1 ? "channel" : "stream";
+                allocated = BenchUtils.allocatedBytes();
+                long start = System.nanoTime();
+                if (channel == 1) {
+                    try (java.nio.channels.FileChannel out = java.nio.channels.FileChannel.open(file,
+                            java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.TRUNCATE_EXISTING)) {
+                        tree.writeTo(out);
+                    }
+                }
+                else {
+                    try (java.io.OutputStream out = java.nio.file.Files.newOutputStream(file)) {
+                        tree.writeTo(out);
+                    }
+                }
+                long writeNanos = System.nanoTime() - start;
+                BenchUtils.printResult("snapshot write " + via, n, "ms", writeNanos / 1e6);
+                BenchUtils.printResult("snapshot write alloc " + via, n, "bytes", BenchUtils.allocatedBytes() - allocated);
+            }
+            BenchUtils.printResult("snapshot file", n, "bytes/item", java.nio.file.Files.size(file) / (double) n);
+            for (int channel = 0; channel <= 1; channel++) {
+                tree = null;
+                BenchUtils.usedHeap(); // collects the previous tree outside the measurement
+                long start = System.nanoTime();
+                if (channel == 1) {
+                    try (java.nio.channels.FileChannel in = java.nio.channels.FileChannel.open(file)) {
+                        tree = AVLTree.readFrom(in);
+                    }
+                }
+                else {
+                    try (java.io.InputStream in = java.nio.file.Files.newInputStream(file)) {
+                        tree = AVLTree.readFrom(in);
+                    }
+                }
+                long readNanos = System.nanoTime() - start;
+                if (tree.size() != n) {
+                    throw new IllegalStateException("read " + tree.size() + " items");
+                }
+                BenchUtils.printResult("snapshot read " + (channel == 1 ? "channel" : "stream"), n, "ms", readNanos / 1e6);
+            }
+        } finally {
+            java.nio.file.Files.delete(file);
+        }
+    }
+
+    /**
+     * inserts n random keys into a DurableAVLTree forcing the log after every insert and in
+     * groups of 16, 256 and 4096, then times a recovery that replays the whole log and
+     * a checkpoint of the recovered tree
+     */
+    static void wal(int n) throws java.io.IOException {
+        int[] keys = BenchUtils.randomKeys(n);
+        for (int groupSize : new int[] {1, 16, 256, 4096}) {
+            java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("avl-wal");
+            try {
+                DurableAVLTree tree = DurableAVLTree.open(directory, groupSize, 0);
+                long start = System.nanoTime();
+                for (int k : keys) {
+                    tree.insert(k, VALUE);
+                }
+                tree.sync();
+                BenchUtils.printResult("wal insert group=" + groupSize, n, "ops/s", BenchUtils.opsPerSecond(n, System.nanoTime() - start));
+                tree.close();
+                if (groupSize == 4096) {
+                    start = System.nanoTime();
+                    tree = DurableAVLTree.open(directory, groupSize, 0);
+                    BenchUtils.printResult("wal recover log", tree.size(), "ms", (System.nanoTime() - start) / 1e6);
+                    start = System.nanoTime();
+                    tree.checkpoint();
+                    BenchUtils.printResult("wal checkpoint", tree.size(), "ms", (System.nanoTime() - start) / 1e6);
+                    tree.close();
+                    start = System.nanoTime();
+                    tree = DurableAVLTree.open(directory, groupSize, 0);
+                    BenchUtils.printResult("wal recover checkpoint", tree.size(), "ms", (System.nanoTime() - start) / 1e6);
+                    tree.close();
+                }
+            } finally {
+                try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(directory)) {
+                    for (java.nio.file.Path file : (Iterable<java.nio.file.Path>) files::iterator) {
+                        java.nio.file.Files.delete(file);
+                    }
+                }
+                java.nio.file.Files.delete(directory);
+            }
+        }
+    }
+
+    /**
+     * times union, intersect and difference of a tree of n keys with a tree of m keys
+     * (spread over the same range, so some keys are shared) against the same result
+     * computed key by key: keysToArray of the second tree, then insert, search or delete. Median of 5 runs each; the
+     * trees are rebuilt with fromSorted outside the measurement.
+     */
+    static void setOps(int n, int m) {
+        java.util.Random random = new java.util.Random(42);
+        int[] firstKeys = new int[n];
+        for (int i = 0, k = 0; i < n; i++) {
+            k += 1 + random.nextInt(4);
+            firstKeys[i] = k;
+        }
+        int range = firstKeys[n - 1];
+        int[] secondKeys = new int[m];
+        for (int i = 0, k = 0; i < m; i++) {
+            k += 1 + random.nextInt(Math.max(1, 2 * range / m));
+            secondKeys[i] = k;
+        }
+        String[] firstValues = new String[n];
+        String[] secondValues = new String[m];
+        java.util.Arrays.fill(firstValues, VALUE);
+        java.util.Arrays.fill(secondValues, VALUE);
+        String shape = "m=" + m;
+        String[] names = {"union", "intersect", "difference"};
+        for (int operation = 0; operation < 3; operation++) {
+            int rounds = 5;
+            double[] joined = new double[rounds];
+            double[] keyByKey = new double[rounds];
+            for (int round = -2; round < rounds; round++) {
+                AVLTree first = AVLTree.fromSorted(firstKeys, firstValues);
+                AVLTree second = AVLTree.fromSorted(secondKeys, secondValues);
+                long start = System.nanoTime();
+                if (operation == 0) {
+                    first.union(second);
+                } else if (operation == 1) {
+                    first.intersect(second);
+                } else {
+                    first.difference(second);
+                }
+                long joinNanos = System.nanoTime() - start;
+                int size = first.size();
+                first = AVLTree.fromSorted(firstKeys, firstValues);
+                second = AVLTree.fromSorted(secondKeys, secondValues);
+                start = System.nanoTime();
+                AVLTree result = first;
+                int[] probes = second.keysToArray();
+                if (operation == 0) {
+                    for (int k : probes) {
+                        first.insert(k, VALUE);
+                    }
+                } else if (operation == 1) {
+                    result = new AVLTree();
+                    for (int k : probes) {
+                        String value = first.search(k);
+                        if (value != null) {
+                            result.insert(k, value);
+                        }
+                    }
+                } else {
+                    for (int k : probes) {
+                        first.delete(k);
+                    }
+                }
+                long keyNanos = System.nanoTime() - start;
+                if (result.size() != size) {
+                    throw new IllegalStateException(names[operation] + " sizes differ: " + size + " " + result.size());
+                }
+                if (round >= 0) {
+                    joined[round] = joinNanos / 1e6;
+                    keyByKey[round] = keyNanos / 1e6;
+                }
+            }
+            java.util.Arrays.sort(joined);
+            java.util.Arrays.sort(keyByKey);
+            BenchUtils.printResult("setOps " + names[operation] + " join " + shape, n, "ms", joined[rounds / 2]);
+            BenchUtils.printResult("setOps " + names[operation] + " keys " + shape, n, "ms", keyByKey[rounds / 2]);
+        }
+    }
+
+    /**
+     * times fromSorted, keysToArray and infoToArray on n keys, then their parallel versions
+     * run inside ForkJoinPools of 1 to 32 threads (median of 5 runs each)
+     */
+    static void parallelCopy(int n) throws Exception {
+        final int[] keys = BenchUtils.sequentialKeys(n);
+        final String[] values = new String[n];
+        java.util.Arrays.fill(values, VALUE);
+        final AVLTree tree = AVLTree.fromSorted(keys, values);
+        BenchUtils.printResult("parallelCopy fromSorted", n, "ms", medianMillis(null, () -> AVLTree.fromSorted(keys, values)));
+        BenchUtils.printResult("parallelCopy keysToArray", n, "ms", medianMillis(null, tree::keysToArray));
+        BenchUtils.printResult("parallelCopy infoToArray", n, "ms", medianMillis(null, tree::infoToArray));
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(threads);
+            try {
+                String suffix = " threads=" + threads;
+                BenchUtils.printResult("parallelFromSorted" + suffix, n, "ms", medianMillis(pool, () -> AVLTree.parallelFromSorted(keys, values)));
+                BenchUtils.printResult("parallelKeysToArray" + suffix, n, "ms", medianMillis(pool, tree::parallelKeysToArray));
+                BenchUtils.printResult("parallelInfoToArray" + suffix, n, "ms", medianMillis(pool, tree::parallelInfoToArray));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * sums and filters the keys of a tree of n random keys: first by looping over keysToArray
+     * and over a range iterator, then with keyStream sequentially and in parallel inside
+     * ForkJoinPools of 1 to 32 threads (median of 5 runs each)
+     */
+    static void streams(int n) throws Exception {
+        final AVLTree tree = new AVLTree();
+        for (int key : BenchUtils.randomKeys(n)) {
+            tree.insert(key, VALUE);
+        }
+        BenchUtils.printResult("streams keysToArray loop", n, "ms", medianMillis(null, () -> {
+            long sum = 0;
+            for (int key : tree.keysToArray()) {
+                sum += key;
+            }
+            return sum;
+        }));
+        BenchUtils.printResult("streams rangeIterator loop", n, "ms", medianMillis(null, () -> {
+            long sum = 0;
+            java.util.PrimitiveIterator.OfInt keys = tree.rangeIterator(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            while (keys.hasNext()) {
+                sum += keys.nextInt();
+            }
+            return sum;
+        }));
+        BenchUtils.printResult("streams keyStream sum", n, "ms", medianMillis(null, () -> tree.keyStream().asLongStream().sum()));
+        for (int threads = 1; threads <= 32; threads *= 2) {
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(threads);
+            try {
+                String suffix = " threads=" + threads;
+                BenchUtils.printResult("streams parallel sum" + suffix, n, "ms",
+                        medianMillis(pool, () -> tree.keyStream().parallel().asLongStream().sum()));
+                BenchUtils.printResult("streams parallel filter" + suffix, n, "ms",
+                        medianMillis(pool, () -> tree.keyStream().parallel().filter(key -> (key & 7) == 0).count()));
+                BenchUtils.printResult("streams parallel entries" + suffix, n, "ms",
+                        medianMillis(pool, () -> tree.entryStream().parallel().filter(node -> node.getValue() != null).count()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * inserts n random keys with numeric infos into a plain tree and into a tree keeping SUM
+     * (bytes per node and insert throughput), then answers random range sums of several
+     * widths with aggregate(lo, hi) and, for comparison, by scanning the range
+     */
+    static void aggregates(int n) {
+        int[] keys = BenchUtils.randomKeys(n);
+        String[] numbers = new String[1000];
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = Integer.toString(i);
+        }
+        AVLTree tree = null;
+        for (AVLTree.Aggregate aggregate : new AVLTree.Aggregate[] {null, AVLTree.SUM}) {
+            String name = aggregate == null ? "aggregates plain" : "aggregates sum";
+            tree = null; // the previous tree must not count in usedHeap
+            long before = BenchUtils.usedHeap();
+            tree = new AVLTree(aggregate);
+            long start = System.nanoTime();
+            for (int k : keys) {
+                tree.insert(k, numbers[k % numbers.length]);
+            }
+            long insertNanos = System.nanoTime() - start;
+            long after = BenchUtils.usedHeap();
+            BenchUtils.printResult(name, n, "bytes/node", (after - before) / (double) n);
+            BenchUtils.printResult(name + " insert", n, "ops/s", BenchUtils.opsPerSecond(n, insertNanos));
+        }
+        java.util.Random random = new java.util.Random(42);
+        for (int width = 100; width <= n; width *= 100) {
+            int queries = (int) Math.max(10, Math.min(100000, 10000000L / width));
+            int[] starts = new int[queries];
+            for (int q = 0; q < queries; q++) {
+                starts[q] = random.nextInt(n - width + 1);
+            }
+            long total = 0;
+            long start = System.nanoTime();
+            for (int lo : starts) {
+                total += tree.aggregate(lo, lo + width - 1);
+            }
+            long aggregateNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int lo : starts) {
+                total -= tree.entryStream(lo, lo + width - 1).mapToLong(node -> Long.parseLong(node.getValue())).sum();
+            }
+            long scanNanos = System.nanoTime() - start;
+            if (total != 0) {
+                throw new IllegalStateException("aggregate and scan disagree");
+            }
+            BenchUtils.printResult("aggregates sum width=" + width, n, "queries/s", BenchUtils.opsPerSecond(queries, aggregateNanos));
+            BenchUtils.printResult("aggregates scan width=" + width, n, "queries/s", BenchUtils.opsPerSecond(queries, scanNanos));
+        }
+    }
+
+    /**
+     * builds an IntervalTree of n random intervals (starts spread over 100n points, mostly
+     * short, every hundredth up to 1M long), then times stab and overlapping queries against
+     * scanning every interval in start order up to the end of the query
+     */
+    static void intervals(int n) {
+        java.util.Random random = new java.util.Random(42);
+        long space = 100L * n;
+        long before = BenchUtils.usedHeap();
+        IntervalTree<String> tree = new IntervalTree<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            long from = (long) (random.nextDouble() * space);
+            long length = i % 100 == 0 ? random.nextInt(1000000) : random.nextInt(1000);
+            tree.put(from, from + length, VALUE);
+        }
+        long insertNanos = System.nanoTime() - start;
+        long after = BenchUtils.usedHeap();
+        BenchUtils.printResult("intervals", n, "bytes/node", (after - before) / (double) n);
+        BenchUtils.printResult("intervals put", n, "ops/s", BenchUtils.opsPerSecond(n, insertNanos));
+        for (long width : new long[] {1, 1000, 100000}) {
+            long[] points = new long[100000];
+            for (int q = 0; q < points.length; q++) {
+                points[q] = (long) (random.nextDouble() * space);
+            }
+            long[] found = new long[points.length];
+            start = System.nanoTime();
+            for (int q = 0; q < points.length; q++) {
+                java.util.Iterator<IntervalTree.Interval<String>> results = width == 1 ? tree.stab(points[q])
+                        : tree.overlapping(points[q], points[q] + width - 1);
+                while (results.hasNext()) {
+                    results.next();
+                    found[q]++;
+                }
+            }
+            long queryNanos = System.nanoTime() - start;
+            int scans = 20; // what a tree keyed by start alone can do: walk every start up to the end of the query
+            start = System.nanoTime();
+            for (int q = 0; q < scans; q++) {
+                long scanned = 0;
+                for (IntervalTree.Interval<String> node = tree.firstNode(); node != null && node.getStart() <= points[q] + width - 1;
+                        node = tree.successor(node)) {
+                    if (node.getEnd() >= points[q]) {
+                        scanned++;
+                    }
+                }
+                if (scanned != found[q]) {
+                    throw new IllegalStateException("the scan found " + scanned + " intervals, the tree " + found[q]);
+                }
+            }
+            long scanNanos = System.nanoTime() - start;
+            long total = 0;
+            for (long count : found) {
+                total += count;
+            }
+            String name = width == 1 ? "intervals stab" : "intervals overlapping width=" + width;
+            BenchUtils.printResult(name, n, "queries/s", BenchUtils.opsPerSecond(points.length, queryNanos));
+            BenchUtils.printResult(name + " results", n, "per query", total / (double) points.length);
+            BenchUtils.printResult(name + " by start scan", n, "queries/s", BenchUtils.opsPerSecond(scans, scanNanos));
+        }
+    }
+
+    /**
+     * runs work 7 times (inside pool, when given) and returns the median of the last 5 in ms
+     */
+    private static double medianMillis(java.util.concurrent.ForkJoinPool pool, java.util.concurrent.Callable<?> work) throws Exception {
+        double[] millis = new double[5];
+        for (int round = -2; round < millis.length; round++) {
+            long start = System.nanoTime();
+            Object result = pool == null ? work.call() : pool.submit(work).get();
+            long nanos = System.nanoTime() - start;
+            if (result == null) {
+                throw new IllegalStateException("no result");
+            }
+            if (round >= 0) {
+                millis[round] = nanos / 1e6;
+            }
+        }
+        java.util.Arrays.sort(millis);
+        return millis[millis.length / 2];
+    }
+}
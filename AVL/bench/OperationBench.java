@@ -0,0 +1,350 @@
+import java.util.Arrays;
+
+/**
+ *
+ * OperationBench
+ *
+ * Measures every AVLTree operation over tree sizes from 1K keys up to maxSize and
+ * over four key distributions: sequential, random, zipfian and alternating (see
+ * BenchUtils). A tree of size n holds the even keys 0..2n-2; insert adds odd keys,
+ * the other operations use even ones. For each case it prints throughput, bytes
+ * allocated per operation by the measuring thread, and 50th/99th percentile latency.
+ *
+ * Usage: java -Xmx4g OperationBench [operations] [distributions] [maxSize]
+ * operations and distributions are comma separated lists or "all", e.g.
+ * java -Xmx4g OperationBench search,split random,zipfian 1000000
+ *
+ * This is the quick runner that needs nothing but the JDK. For numbers to compare
+ * across changes, use the JMH port in jmh/avl/jmh/TreeOperations.java
+ * (mvn -P jmh package), which uses the same key orders.
+ *
+ */
+public class OperationBench {
+
+    static final String VALUE = "v";
+    static final String[] OPERATIONS = {"insert", "delete", "search", "frozenSearch", "floorKey", "higherKey", "min", "max", "select", "rank", "countRange",
+            "rangeScan", "descendingScan",
+            "keysToArray", "infoToArray", "keysIntoBuffer", "infoIntoBuffer", "split", "join"};
+    static final String[] DISTRIBUTIONS = {"sequential", "random", "zipfian", "alternating"};
+    static final int MAX_OPS = 200000; // operations measured per pass
+    static final long MAX_NANOS = 1000000000L; // measured time budget per pass, resets excluded
+
+    static long sink; // consumes results so the JIT cannot drop the measured calls
+
+    public static void main(String[] args) {
+        String[] operations = args.length > 0 && !args[0].equals("all") ? args[0].split(",") : OPERATIONS;
+        String[] distributions = args.length > 1 && !args[1].equals("all") ? args[1].split(",") : DISTRIBUTIONS;
+        int maxSize = args.length > 2 ? Integer.parseInt(args[2]) : 10000000;
+        System.out.printf("%-14s %-12s %10s %16s %10s %10s %10s%n",
+                "operation", "keys", "n", "ops/s", "bytes/op", "p50 ns", "p99 ns");
+        for (int n = 1000; n <= maxSize; n *= 10) {
+            Base base = new Base(n);
+            for (String operation : operations) {
+                if (!usesKeys(operation)) {
+                    report(operation, "-", n, measure(workload(operation, null, base)));
+                    continue;
+                }
+                for (String distribution : distributions) {
+                    int[] order = keyOrder(distribution, n, Math.min(n, MAX_OPS));
+                    report(operation, distribution, n, measure(workload(operation, order, base)));
+                }
+            }
+        }
+    }
+
+    /**
+     * the sorted contents of a tree of size n, bulk loaded again whenever a workload needs a fresh tree
+     */
+    private static final class Base {
+        final int[] keys;
+        final String[] values;
+
+        Base(int n) {
+            keys = new int[n];
+            values = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = 2 * i;
+                values[i] = VALUE;
+            }
+        }
+
+        AVLTree tree() {
+            return AVLTree.fromSorted(keys, values);
+        }
+    }
+
+    /**
+     * One measured operation. A round calls reset() and then run(0..ops-1); before(i) and
+     * after(i) are called around run(i) but outside the measurement when hooks is set.
+     */
+    private static abstract class Workload {
+        final int ops;
+        final boolean hooks;
+
+        Workload(int ops, boolean hooks) {
+            this.ops = ops;
+            this.hooks = hooks;
+        }
+
+        void reset() {
+        }
+
+        void before(int i) {
+        }
+
+        abstract void run(int i);
+
+        void after(int i) {
+        }
+    }
+
+    private static boolean usesKeys(String operation) {
+        return !operation.equals("min") && !operation.equals("max")
+                && !operation.endsWith("ToArray") && !operation.endsWith("IntoBuffer");
+    }
+
+    /**
+     * returns m indexes in 0..n-1 in the order the distribution visits them
+     */
+    static int[] keyOrder(String distribution, int n, int m) {
+        switch (distribution) {
+            case "sequential":
+                return BenchUtils.sequentialKeys(m);
+            case "random":
+                return Arrays.copyOf(BenchUtils.randomKeys(n), m);
+            case "zipfian":
+                return BenchUtils.zipfianKeys(n, m);
+            case "alternating":
+                return BenchUtils.alternatingKeys(n, m);
+            default:
+                throw new IllegalArgumentException("unknown distribution: " + distribution);
+        }
+    }
+
+    private static Workload workload(String operation, final int[] order, final Base base) {
+        final AVLTree[] tree = {base.tree()};
+        switch (operation) {
+            case "insert":
+                return new Workload(order.length, false) {
+                    void reset() {
+                        tree[0] = base.tree();
+                    }
+
+                    void run(int i) {
+                        sink += tree[0].insert(2 * order[i] + 1, VALUE);
+                    }
+                };
+            case "delete":
+                return new Workload(order.length, false) {
+                    void reset() {
+                        tree[0] = base.tree();
+                    }
+
+                    void run(int i) {
+                        sink += tree[0].delete(2 * order[i]);
+                    }
+                };
+            case "search":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].search(2 * order[i]).length();
+                    }
+                };
+            case "frozenSearch":
+                tree[0].freeze();
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].search(2 * order[i]).length();
+                    }
+                };
+            case "floorKey":
+                return new Workload(order.length, false) {
+                    void run(int i) { // probes odd keys, which are never in the tree
+                        sink += tree[0].floorKey(2 * order[i] + 1);
+                    }
+                };
+            case "higherKey":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].higherKey(2 * order[i] - 1);
+                    }
+                };
+            case "select":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].select(order[i]);
+                    }
+                };
+            case "rank":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].rank(2 * order[i]);
+                    }
+                };
+            case "countRange":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        sink += tree[0].countRange(2 * order[i], 2 * order[i] + 2000);
+                    }
+                };
+            case "rangeScan":
+                return new Workload(order.length, false) {
+                    void run(int i) { // visits up to 1000 keys
+                        java.util.PrimitiveIterator.OfInt keys = tree[0].rangeIterator(2 * order[i], 2 * order[i] + 1998);
+                        while (keys.hasNext()) {
+                            sink += keys.nextInt();
+                        }
+                    }
+                };
+            case "descendingScan":
+                return new Workload(order.length, false) {
+                    void run(int i) {
+                        java.util.PrimitiveIterator.OfInt keys = tree[0].descendingRangeIterator(2 * order[i] - 1998, 2 * order[i]);
+                        while (keys.hasNext()) {
+                            sink += keys.nextInt();
+                        }
+                    }
+                };
+            case "min":
+                return new Workload(MAX_OPS, false) {
+                    void run(int i) {
+                        sink += tree[0].min().length();
+                    }
+                };
+            case "max":
+                return new Workload(MAX_OPS, false) {
+                    void run(int i) {
+                        sink += tree[0].max().length();
+                    }
+                };
+            case "keysToArray":
+                return new Workload(1, false) {
+                    void run(int i) {
+                        sink += tree[0].keysToArray().length;
+                    }
+                };
+            case "infoToArray":
+                return new Workload(1, false) {
+                    void run(int i) {
+                        sink += tree[0].infoToArray().length;
+                    }
+                };
+            case "keysIntoBuffer":
+                final int[] keyBuffer = new int[base.keys.length];
+                return new Workload(1, false) {
+                    void run(int i) {
+                        sink += tree[0].keysToArray(keyBuffer, 0);
+                    }
+                };
+            case "infoIntoBuffer":
+                final String[] infoBuffer = new String[base.keys.length];
+                return new Workload(1, false) {
+                    void run(int i) {
+                        sink += tree[0].infoToArray(infoBuffer, 0);
+                    }
+                };
+            case "split":
+                return new Workload(order.length, true) {
+                    AVLTree[] parts;
+
+                    void run(int i) {
+                        parts = tree[0].split(2 * order[i]);
+                    }
+
+                    void after(int i) { // joins the halves back so the next split sees the whole tree
+                        tree[0] = parts[0];
+                        tree[0].join(single(2 * order[i]), parts[1]);
+                    }
+                };
+            case "join":
+                return new Workload(order.length, true) {
+                    AVLTree[] parts;
+                    AVLTree.IAVLNode middle;
+
+                    void before(int i) {
+                        parts = tree[0].split(2 * order[i]);
+                        middle = single(2 * order[i]);
+                    }
+
+                    void run(int i) {
+                        sink += parts[0].join(middle, parts[1]);
+                    }
+
+                    void after(int i) {
+                        tree[0] = parts[0];
+                    }
+                };
+            default:
+                throw new IllegalArgumentException("unknown operation: " + operation);
+        }
+    }
+
+    private static AVLTree.IAVLNode single(int key) {
+        AVLTree tree = new AVLTree();
+        tree.insert(key, VALUE);
+        return tree.getRoot();
+    }
+
+    /**
+     * runs a warm-up pass, a pass timing each operation (latency and allocation) and,
+     * unless the workload has hooks, a pass timing whole rounds (throughput).
+     * returns {ops/s, bytes/op, p50 ns, p99 ns}
+     */
+    private static double[] measure(Workload workload) {
+        pass(workload, null);
+        long[] latencies = new long[MAX_OPS];
+        long[] timed = pass(workload, latencies);
+        long[] batched = workload.hooks ? timed : pass(workload, null);
+        int count = (int) timed[0];
+        Arrays.sort(latencies, 0, count);
+        return new double[] {
+                BenchUtils.opsPerSecond(batched[0], batched[1]),
+                timed[2] / (double) count,
+                latencies[(int) (count * 0.50)],
+                latencies[Math.min(count - 1, (int) (count * 0.99))]};
+    }
+
+    /**
+     * runs rounds of the workload until MAX_OPS operations ran or MAX_NANOS were measured.
+     * when latencies is given (or the workload has hooks) every operation is timed on its own.
+     * returns {operations, measured nanos, allocated bytes}
+     */
+    private static long[] pass(Workload workload, long[] latencies) {
+        long done = 0;
+        long nanos = 0;
+        long bytes = 0;
+        while (done < MAX_OPS && nanos < MAX_NANOS) {
+            workload.reset();
+            int count = (int) Math.min(workload.ops, MAX_OPS - done);
+            if (latencies == null && !workload.hooks) {
+                long start = System.nanoTime();
+                for (int i = 0; i < count; i++) {
+                    workload.run(i);
+                }
+                nanos += System.nanoTime() - start;
+                done += count;
+                continue;
+            }
+            for (int i = 0; i < count && nanos < MAX_NANOS; i++) {
+                workload.before(i);
+                long allocated = latencies == null ? 0 : BenchUtils.allocatedBytes();
+                long start = System.nanoTime();
+                workload.run(i);
+                long elapsed = System.nanoTime() - start;
+                if (latencies != null) {
+                    bytes += BenchUtils.allocatedBytes() - allocated;
+                    latencies[(int) done] = elapsed;
+                }
+                workload.after(i);
+                nanos += elapsed;
+                done++;
+            }
+        }
+        return new long[] {done, nanos, bytes};
+    }
+
+    private static void report(String operation, String distribution, int n, double[] result) {
+        System.out.printf("%-14s %-12s %10d %,16.1f %10.1f %10.0f %10.0f%n",
+                operation, distribution, n, result[0], result[1], result[2], result[3]);
+    }
+}
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Generates IntAVLMap, LongAVLMap and DoubleAVLMap from PrimitiveAVLMap.template.
+# Run from anywhere; the maps are written next to AbstractAVLMap.java.
+set -e
+here=$(cd "$(dirname "$0")" && pwd)
+template="$here/PrimitiveAVLMap.template"
+
+generate() { # name type box order-line
+    sed -e "s/@Name@/$1/g" -e "s/@type@/$2/g" -e "s/@Box@/$3/g" \
+        -e "s/^@ORDER@\$/$4/" -e '/^@ORDER@$/d' "$template" > "$here/../$1AVLMap.java"
+}
+
+generate Int int Integer '@ORDER@'
+generate Long long Long '@ORDER@'
+generate Double double Double ' * NaN is a single key larger than every other and -0.0 comes before 0.0.'
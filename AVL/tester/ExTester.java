@@ -184,7 +184,7 @@ public class ExTester {
 
     public static void main(String[] args) {
         // initialize tests success array to false
-        final SuccessStatus[] success = new SuccessStatus[16];
+        final SuccessStatus[] success = new SuccessStatus[44];
 
         final Tests first_tester = new Tests();
         final ExTester second_tester = new ExTester();
@@ -386,6 +386,342 @@ public class ExTester {
                     }
                 }), 15);
 
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[16] = first_tester.arrayTree() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[16] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 16);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[17] = first_tester.mappedTree() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[17] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 17);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[18] = first_tester.fromSorted() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[18] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 18);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[19] = first_tester.batchOperations() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[19] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 19);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[20] = first_tester.splitAndJoin() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[20] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 20);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[21] = first_tester.persistentSnapshots() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[21] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 21);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[22] = first_tester.concurrentTree() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[22] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 22);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[23] = first_tester.arrayExportIntoBuffer() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[23] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 23);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[24] = first_tester.orderStatistics() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[24] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 24);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[25] = first_tester.rangeIterators() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[25] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 25);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[26] = first_tester.navigableQueries() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[26] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 26);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[27] = first_tester.primitiveMaps() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[27] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 27);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[28] = first_tester.sharedVirtualLeaf() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[28] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 28);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[29] = first_tester.frozenSearch() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[29] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 29);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[30] = first_tester.snapshotStreams() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[30] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 30);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[31] = first_tester.durableRecovery() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[31] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 31);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[32] = first_tester.setOperations() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[32] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 32);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[33] = first_tester.parallelBuildAndExport() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[33] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 33);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[34] = first_tester.keyStreams() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[34] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 34);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[35] = first_tester.rangeAggregates() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[35] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 35);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[36] = first_tester.intervalQueries() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[36] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 36);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[37] = first_tester.durableRejectedJoin() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[37] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 37);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[38] = first_tester.immutableVirtualLeaf() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[38] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 38);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[39] = first_tester.arraySplitMissingKey() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[39] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 39);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[40] = first_tester.mappedTruncatedFile() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[40] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 40);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[41] = first_tester.arrayImmutableVirtualLeaf() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[41] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 41);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[42] = first_tester.arrayJoinReleasesOtherPool() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[42] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 42);
+
+        runWithInterrupt(success,
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            success[43] = first_tester.mappedDirtyAfterCrash() ? SuccessStatus.PASS : SuccessStatus.FAIL;
+                        } catch (Throwable e) {
+                            success[43] = SuccessStatus.EXCEPTION;
+                        }
+                    }
+                }), 43);
+
         int final_score = TesterUtils.printStatus(success, second_tester.actualOperations, second_tester.avlOperations);
 		System.out.println("The final score is: " + final_score);
         System.exit(final_score);
@@ -299,4 +299,1330 @@ public class Tests {
         return true;
     }
 
+    public boolean arrayTree() {
+        ArrayAVLTree tree = new ArrayAVLTree();
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<Integer, String>();
+        java.util.Random random = new java.util.Random(7);
+        for (int i = 0; i < 5000; i++) {
+            int k = random.nextInt(1000);
+            if (random.nextInt(3) > 0) {
+                if ((tree.insert(k, "" + k) == -1) != reference.containsKey(k)) {
+                    return false;
+                }
+                reference.put(k, "" + k);
+            } else {
+                if ((tree.delete(k) == -1) != !reference.containsKey(k)) {
+                    return false;
+                }
+                reference.remove(k);
+            }
+            if (tree.size() != reference.size()) {
+                return false;
+            }
+        }
+        if (!tree.min().equals(reference.firstEntry().getValue()) || !tree.max().equals(reference.lastEntry().getValue())) {
+            return false;
+        }
+        int[] keys = tree.keysToArray();
+        int j = 0;
+        for (int key : reference.keySet()) {
+            if (keys[j++] != key || !tree.search(key).equals("" + key)) {
+                return false;
+            }
+        }
+        if (!checkBalanceOfTree(tree.getRoot()) || !checkOrderingOfTree(tree.getRoot())) {
+            return false;
+        }
+
+        int x = keys[keys.length / 3];
+        ArrayAVLTree[] parts = tree.split(x);
+        if (parts[0].size() + parts[1].size() != keys.length - 1 || !tree.empty()) {
+            return false;
+        }
+        if (!checkBalanceOfTree(parts[0].getRoot()) || !checkBalanceOfTree(parts[1].getRoot())) {
+            return false;
+        }
+        ArrayAVLTree single = new ArrayAVLTree();
+        single.insert(x, "" + x);
+        parts[0].join(single.getRoot(), parts[1]);
+        return TesterUtils.arraysIdentical(parts[0].keysToArray(), keys)
+                && checkBalanceOfTree(parts[0].getRoot())
+                && parts[0].max().equals(reference.lastEntry().getValue());
+    }
+
+    public boolean mappedTree() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("avl", ".map");
+        file.deleteOnExit();
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<Integer, String>();
+        java.util.Random random = new java.util.Random(3);
+        MappedAVLTree tree = MappedAVLTree.open(file.toPath());
+        for (int i = 0; i < 40000; i++) {
+            int k = random.nextInt(100000);
+            if (random.nextInt(4) > 0) {
+                tree.insert(k, "" + k);
+                reference.put(k, "" + k);
+            } else {
+                tree.delete(k);
+                reference.remove(k);
+            }
+        }
+        tree.close();
+
+        tree = MappedAVLTree.open(file.toPath());
+        if (tree.size() != reference.size() || !tree.max().equals(reference.lastEntry().getValue())) {
+            return false;
+        }
+        int[] keys = tree.keysToArray();
+        String[] info = tree.infoToArray();
+        int j = 0;
+        for (java.util.Map.Entry<Integer, String> entry : reference.entrySet()) {
+            if (keys[j] != entry.getKey() || !info[j].equals(entry.getValue())
+                    || !tree.search(entry.getKey()).equals(entry.getValue())) {
+                return false;
+            }
+            j++;
+        }
+        for (int key : keys) {
+            tree.delete(key);
+        }
+        boolean emptied = tree.empty() && tree.min() == null && tree.search(keys[0]) == null;
+        tree.close();
+        return emptied;
+    }
+
+    public boolean fromSorted() {
+        int[] keys = new int[1000];
+        String[] info = new String[1000];
+        for (int i = 0; i < 1000; i++) {
+            keys[i] = 3 * i;
+            info[i] = "" + keys[i];
+        }
+        AVLTree avlTree = AVLTree.fromSorted(keys, info);
+        if (avlTree.size() != 1000 || !avlTree.min().equals("0") || !avlTree.max().equals("2997")) {
+            return false;
+        }
+        if (!TesterUtils.arraysIdentical(avlTree.keysToArray(), keys) || !ranksConsistent(avlTree.getRoot())) {
+            return false;
+        }
+        avlTree.insert(1, "1");
+        avlTree.delete(0);
+        return avlTree.min().equals("1") && avlTree.search(1500).equals("1500")
+                && checkBalanceOfTree(avlTree.getRoot()) && ranksConsistent(avlTree.getRoot());
+    }
+
+    private boolean ranksConsistent(AVLTree.IAVLNode node) {
+        if (!node.isRealNode()) {
+            return node.getHeight() == -1;
+        }
+        int left = node.getLeft().getHeight();
+        int right = node.getRight().getHeight();
+        return node.getHeight() == Math.max(left, right) + 1 && Math.abs(left - right) <= 1
+                && ranksConsistent(node.getLeft()) && ranksConsistent(node.getRight());
+    }
+
+    public boolean batchOperations() {
+        AVLTree avlTree = new AVLTree();
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<Integer, String>();
+        java.util.Random random = new java.util.Random(5);
+        for (int round = 0; round < 6; round++) {
+            int batch = round % 2 == 0 ? 3000 : 20;
+            int[] keys = new int[batch];
+            String[] info = new String[batch];
+            for (int i = 0; i < batch; i++) {
+                keys[i] = random.nextInt(10000);
+                info[i] = "" + keys[i];
+                if (!reference.containsKey(keys[i])) {
+                    reference.put(keys[i], info[i]);
+                }
+            }
+            avlTree.insertAll(keys, info);
+            int[] doomed = new int[batch / 2];
+            for (int i = 0; i < doomed.length; i++) {
+                doomed[i] = random.nextInt(10000);
+                reference.remove(doomed[i]);
+            }
+            avlTree.deleteAll(doomed);
+            if (avlTree.size() != reference.size() || !ranksConsistent(avlTree.getRoot())) {
+                return false;
+            }
+            if (!avlTree.min().equals(reference.firstEntry().getValue())
+                    || !avlTree.max().equals(reference.lastEntry().getValue())) {
+                return false;
+            }
+        }
+        int[] keys = avlTree.keysToArray();
+        int j = 0;
+        for (int key : reference.keySet()) {
+            if (keys[j++] != key) {
+                return false;
+            }
+        }
+        avlTree.deleteAll(keys);
+        return avlTree.empty() && avlTree.min() == null;
+    }
+
+    public boolean splitAndJoin() {
+        AVLTree avlTree = new AVLTree();
+        for (int i = 0; i < 1000; i++) {
+            avlTree.insert(i, "" + i);
+        }
+        AVLTree[] trees = avlTree.split(786);
+        if (!avlTree.empty() || trees[0].size() != 786 || trees[1].size() != 213) {
+            return false;
+        }
+        if (!trees[0].max().equals("785") || !trees[1].min().equals("787")
+                || !ranksConsistent(trees[0].getRoot()) || !ranksConsistent(trees[1].getRoot())) {
+            return false;
+        }
+        AVLTree single = new AVLTree();
+        single.insert(786, "786");
+        trees[1].join(single.getRoot(), trees[0]);
+        if (trees[1].size() != 1000 || !trees[0].empty() || !ranksConsistent(trees[1].getRoot())) {
+            return false;
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (!trees[1].search(i).equals("" + i)) {
+                return false;
+            }
+        }
+        return trees[1].delete(786) >= 0 && trees[1].insert(786, "786") >= 0
+                && trees[1].min().equals("0") && trees[1].max().equals("999");
+    }
+
+    public boolean persistentSnapshots() {
+        PersistentAVLTree tree = new PersistentAVLTree();
+        java.util.List<PersistentAVLTree> snapshots = new java.util.ArrayList<>();
+        java.util.List<int[]> expected = new java.util.ArrayList<>();
+        java.util.TreeSet<Integer> keys = new java.util.TreeSet<>();
+        java.util.Random random = new java.util.Random(7);
+        for (int step = 0; step < 5000; step++) {
+            int k = random.nextInt(2000);
+            int height = tree.height();
+            int copied;
+            if (random.nextInt(3) == 0) {
+                copied = tree.delete(k);
+                if ((copied >= 0) != keys.remove(k)) {
+                    return false;
+                }
+            } else {
+                copied = tree.insert(k, "" + k);
+                if ((copied >= 0) != keys.add(k)) {
+                    return false;
+                }
+            }
+            if (copied > 2 * (height + 2)) {
+                return false;
+            }
+            if (step % 100 == 0) {
+                snapshots.add(tree.snapshot());
+                int[] arr = new int[keys.size()];
+                int i = 0;
+                for (int key : keys) {
+                    arr[i++] = key;
+                }
+                expected.add(arr);
+            }
+        }
+        for (int i = 0; i < snapshots.size(); i++) {
+            PersistentAVLTree snapshot = snapshots.get(i);
+            int[] arr = expected.get(i);
+            if (!java.util.Arrays.equals(snapshot.keysToArray(), arr) || snapshot.size() != arr.length) {
+                return false;
+            }
+            if (arr.length > 0 && !snapshot.search(arr[arr.length / 2]).equals("" + arr[arr.length / 2])) {
+                return false;
+            }
+        }
+        PersistentAVLTree copy = tree.snapshot();
+        copy.insert(-1, "-1");
+        return tree.search(-1) == null && copy.min().equals("-1") && tree.size() == keys.size();
+    }
+
+    public boolean concurrentTree() throws InterruptedException {
+        final ConcurrentAVLTree tree = new ConcurrentAVLTree();
+        final int writers = 4;
+        final boolean[] ok = {true};
+        Thread[] threads = new Thread[writers + 1];
+        for (int t = 0; t < writers; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int k = offset; k < 4000; k += writers) {
+                        tree.insert(k, "" + k);
+                    }
+                    for (int k = offset; k < 4000; k += 2 * writers) {
+                        tree.delete(k);
+                    }
+                }
+            });
+        }
+        threads[writers] = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int round = 0; round < 200; round++) {
+                    int[] keys = tree.keysToArray();
+                    if (keys.length > 4000) {
+                        ok[0] = false;
+                    }
+                    for (int i = 1; i < keys.length; i++) {
+                        if (keys[i - 1] >= keys[i]) {
+                            ok[0] = false;
+                        }
+                    }
+                }
+            }
+        });
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (!ok[0] || tree.size() != 2000) {
+            return false;
+        }
+        for (int k = 0; k < 4000; k++) {
+            boolean kept = k % (2 * writers) >= writers;
+            if ((tree.search(k) != null) != kept) {
+                return false;
+            }
+        }
+        return tree.min().equals("4") && tree.max().equals("3999") && tree.insert(4, "4") == -1;
+    }
+
+    public boolean arrayExportIntoBuffer() {
+        AVLTree avlTree = new AVLTree();
+        if (avlTree.keysToArray().length != 0 || avlTree.keysToArray(new int[0], 0) != 0) {
+            return false;
+        }
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+        java.util.Random random = new java.util.Random(11);
+        for (int i = 0; i < 3000; i++) {
+            int k = random.nextInt(5000);
+            avlTree.insert(k, "" + k);
+            reference.put(k, "" + k);
+            if (i % 3 == 0) {
+                avlTree.delete(i);
+                reference.remove(i);
+            }
+        }
+        int size = reference.size();
+        int[] keys = new int[size + 7];
+        String[] info = new String[size + 7];
+        if (avlTree.keysToArray(keys, 5) != size || avlTree.infoToArray(info, 5) != size) {
+            return false;
+        }
+        int i = 5;
+        for (java.util.Map.Entry<Integer, String> entry : reference.entrySet()) {
+            if (keys[i] != entry.getKey() || !info[i].equals(entry.getValue())) {
+                return false;
+            }
+            i++;
+        }
+        if (keys[4] != 0 || info[size + 5] != null
+                || !java.util.Arrays.equals(avlTree.keysToArray(), java.util.Arrays.copyOfRange(keys, 5, size + 5))) {
+            return false;
+        }
+        try {
+            avlTree.keysToArray(keys, 8);
+            return false;
+        } catch (IndexOutOfBoundsException expected) {
+            return true;
+        }
+    }
+
+    public boolean orderStatistics() {
+        AVLTree avlTree = new AVLTree();
+        java.util.TreeSet<Integer> reference = new java.util.TreeSet<>();
+        java.util.Random random = new java.util.Random(12);
+        for (int i = 0; i < 2000; i++) {
+            int k = random.nextInt(10000) - 5000;
+            avlTree.insert(k, "" + k);
+            reference.add(k);
+        }
+        for (int i = 0; i < 500; i++) {
+            int k = random.nextInt(10000) - 5000;
+            avlTree.delete(k);
+            reference.remove(k);
+        }
+        int i = 0;
+        for (int key : reference) {
+            if (avlTree.select(i) != key || avlTree.rank(key) != i) {
+                return false;
+            }
+            i++;
+        }
+        for (int j = 0; j < 200; j++) {
+            int lo = random.nextInt(12000) - 6000;
+            int hi = lo + random.nextInt(3000) - 500;
+            int expected = lo > hi ? 0 : reference.subSet(lo, true, hi, true).size();
+            if (avlTree.countRange(lo, hi) != expected || avlTree.rank(lo) != reference.headSet(lo).size()) {
+                return false;
+            }
+        }
+        if (avlTree.countRange(Integer.MIN_VALUE, Integer.MAX_VALUE) != reference.size()) {
+            return false;
+        }
+        try {
+            avlTree.select(reference.size());
+            return false;
+        } catch (IndexOutOfBoundsException expected) {
+            return new AVLTree().rank(3) == 0 && new AVLTree().countRange(0, 10) == 0;
+        }
+    }
+
+    public boolean rangeIterators() {
+        AVLTree avlTree = new AVLTree();
+        java.util.TreeSet<Integer> reference = new java.util.TreeSet<>();
+        java.util.Random random = new java.util.Random(13);
+        for (int i = 0; i < 1500; i++) {
+            int k = random.nextInt(4000);
+            avlTree.insert(k, "" + k);
+            reference.add(k);
+        }
+        for (int round = 0; round < 300; round++) {
+            int lo = random.nextInt(4400) - 200;
+            int hi = round == 0 ? Integer.MAX_VALUE : lo + random.nextInt(800) - 50;
+            if (round == 1) {
+                lo = Integer.MIN_VALUE;
+            }
+            java.util.NavigableSet<Integer> expected = lo > hi
+                    ? new java.util.TreeSet<Integer>() : reference.subSet(lo, true, hi, true);
+            java.util.PrimitiveIterator.OfInt ascending = avlTree.rangeIterator(lo, hi);
+            for (int key : expected) {
+                if (!ascending.hasNext() || ascending.nextInt() != key) {
+                    return false;
+                }
+            }
+            java.util.PrimitiveIterator.OfInt descending = avlTree.descendingRangeIterator(lo, hi);
+            for (int key : expected.descendingSet()) {
+                if (!descending.hasNext() || descending.nextInt() != key) {
+                    return false;
+                }
+            }
+            if (ascending.hasNext() || descending.hasNext()) {
+                return false;
+            }
+        }
+        try {
+            new AVLTree().rangeIterator(0, 10).nextInt();
+            return false;
+        } catch (java.util.NoSuchElementException expected) {
+            return true;
+        }
+    }
+
+    public boolean navigableQueries() {
+        AVLTree avlTree = new AVLTree();
+        java.util.TreeSet<Integer> reference = new java.util.TreeSet<>();
+        java.util.Random random = new java.util.Random(14);
+        for (int i = 0; i < 1000; i++) {
+            int k = random.nextInt(3000) - 1500;
+            avlTree.insert(k, "" + k);
+            reference.add(k);
+        }
+        int[] probes = new int[400];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(3400) - 1700;
+        }
+        probes[0] = Integer.MIN_VALUE;
+        probes[1] = Integer.MAX_VALUE;
+        probes[2] = reference.first();
+        probes[3] = reference.last();
+        for (int probe : probes) {
+            if (!sameNavigable(reference.floor(probe), avlTree.floorInfo(probe))
+                    || !sameNavigable(reference.ceiling(probe), avlTree.ceilingInfo(probe))
+                    || !sameNavigable(reference.lower(probe), avlTree.lowerInfo(probe))
+                    || !sameNavigable(reference.higher(probe), avlTree.higherInfo(probe))) {
+                return false;
+            }
+            if (reference.floor(probe) != null && avlTree.floorKey(probe) != reference.floor(probe)) {
+                return false;
+            }
+            if (reference.ceiling(probe) != null && avlTree.ceilingKey(probe) != reference.ceiling(probe)) {
+                return false;
+            }
+            if (reference.lower(probe) != null && avlTree.lowerKey(probe) != reference.lower(probe)) {
+                return false;
+            }
+            if (reference.higher(probe) != null && avlTree.higherKey(probe) != reference.higher(probe)) {
+                return false;
+            }
+        }
+        try {
+            avlTree.lowerKey(reference.first());
+            return false;
+        } catch (java.util.NoSuchElementException expected) {
+            return new AVLTree().floorInfo(5) == null;
+        }
+    }
+
+    private boolean sameNavigable(Integer expectedKey, String info) {
+        return expectedKey == null ? info == null : ("" + expectedKey).equals(info);
+    }
+
+    public boolean primitiveMaps() {
+        IntAVLMap<String> ints = new IntAVLMap<>();
+        LongAVLMap<String> longs = new LongAVLMap<>();
+        DoubleAVLMap<String> doubles = new DoubleAVLMap<>();
+        AVLMap<String, String> strings = new AVLMap<>(java.util.Comparator.<String>naturalOrder());
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+        java.util.Random random = new java.util.Random(15);
+        for (int step = 0; step < 20000; step++) {
+            int k = random.nextInt(3000) - 1500;
+            long big = k * 4000000000L;
+            String expected;
+            if (random.nextInt(3) == 0) {
+                expected = reference.remove(k);
+                if (!same(expected, ints.remove(k)) || !same(expected, longs.remove(big))
+                        || !same(expected, doubles.remove(k / 8.0)) || !same(expected, strings.remove(key(k)))) {
+                    return false;
+                }
+            } else {
+                String value = "v" + step;
+                expected = reference.put(k, value);
+                if (!same(expected, ints.put(k, value)) || !same(expected, longs.put(big, value))
+                        || !same(expected, doubles.put(k / 8.0, value)) || !same(expected, strings.put(key(k), value))) {
+                    return false;
+                }
+            }
+        }
+        int size = reference.size();
+        if (ints.size() != size || longs.size() != size || doubles.size() != size || strings.size() != size
+                || mapHeight(ints.root) < -1 || mapHeight(longs.root) < -1
+                || mapHeight(doubles.root) < -1 || mapHeight(strings.root) < -1) {
+            return false;
+        }
+        java.util.List<String> values = new java.util.ArrayList<>(reference.values());
+        if (!values.equals(ints.values()) || !values.equals(longs.values())
+                || !values.equals(doubles.values()) || !values.equals(strings.values())) {
+            return false;
+        }
+        int[] keys = ints.keysToArray();
+        int i = 0;
+        for (int k : reference.keySet()) {
+            if (keys[i] != k || ints.select(i) != k || longs.select(i) != k * 4000000000L
+                    || doubles.select(i) != k / 8.0 || !strings.select(i).equals(key(k))) {
+                return false;
+            }
+            i++;
+        }
+        doubles.put(Double.NaN, "nan");
+        doubles.put(-0.0, "negative zero");
+        doubles.put(0.0, "zero");
+        return ints.firstKey() == reference.firstKey() && longs.lastKey() == reference.lastKey() * 4000000000L
+                && Double.isNaN(doubles.lastKey()) && doubles.get(Double.NaN).equals("nan")
+                && doubles.get(-0.0).equals("negative zero") && doubles.get(0.0).equals("zero")
+                && strings.firstKey().equals(key(reference.firstKey()));
+    }
+
+    private static boolean same(String expected, String actual) {
+        return expected == null ? actual == null : expected.equals(actual);
+    }
+
+    private static String key(int k) { // keeps the string order the same as the int order
+        return String.format("%06d", k + 100000);
+    }
+
+    /**
+     * returns the height of the subtree of node, or -2 if rank, size, parent or balance is wrong anywhere in it
+     */
+    private static int mapHeight(AbstractAVLMap.Node<?, ?> node) {
+        if (node == null) {
+            return -1;
+        }
+        int left = mapHeight(node.left);
+        int right = mapHeight(node.right);
+        if (left < -1 || right < -1 || Math.abs(left - right) > 1 || node.rank != Math.max(left, right) + 1
+                || node.size != AbstractAVLMap.size(node.left) + AbstractAVLMap.size(node.right) + 1
+                || (node.left != null && node.left.parent != node) || (node.right != null && node.right.parent != node)) {
+            return -2;
+        }
+        return node.rank;
+    }
+
+    public boolean sharedVirtualLeaf() {
+        AVLTree first = new AVLTree();
+        AVLTree second = new AVLTree();
+        java.util.Random random = new java.util.Random(17);
+        for (int i = 0; i < 3000; i++) { // enough rotations and internal deletions to touch every leaf
+            first.insert(random.nextInt(4000), "a");
+            second.insert(4000 + random.nextInt(4000), "b");
+            first.delete(random.nextInt(4000));
+        }
+        AVLTree[] parts = first.split(first.select(first.size() / 2));
+        AVLTree single = new AVLTree();
+        single.insert(3999, "m");
+        AVLTree.IAVLNode virtual = single.getRoot().getLeft();
+        parts[1].delete(3999);
+        parts[1].join(single.getRoot(), second);
+        for (AVLTree tree : parts) {
+            AVLTree.IAVLNode node = tree.getRoot();
+            while (node.isRealNode()) {
+                node = node.getLeft();
+            }
+            if (node != virtual || tree.getRoot().getParent() != virtual) {
+                return false;
+            }
+        }
+        AVLTree other = new AVLTree();
+        other.insert(1, "x");
+        return other.getRoot().getRight() == virtual && virtual.getParent() == null && virtual.getHeight() == -1
+                && !virtual.isRealNode() && first.getRoot() == null && second.getRoot() == null;
+    }
+
+    public boolean frozenSearch() {
+        AVLTree avlTree = new AVLTree();
+        avlTree.freeze();
+        if (!avlTree.isFrozen() || avlTree.search(0) != null || avlTree.search(-1) != null) {
+            return false;
+        }
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+        java.util.Random random = new java.util.Random(18);
+        for (int i = 0; i < 3000; i++) {
+            int k = random.nextInt(20000) - 10000;
+            avlTree.insert(k, "" + k);
+            reference.put(k, "" + k);
+        }
+        avlTree.insert(Integer.MIN_VALUE, "min");
+        avlTree.insert(Integer.MAX_VALUE, "max");
+        reference.put(Integer.MIN_VALUE, "min");
+        reference.put(Integer.MAX_VALUE, "max");
+        for (int round = 0; round < 6; round++) {
+            if (avlTree.isFrozen()) {
+                return false;
+            }
+            avlTree.freeze();
+            for (int k = -10002; k <= 10002; k++) {
+                if (!java.util.Objects.equals(avlTree.search(k), reference.get(k))) {
+                    return false;
+                }
+            }
+            if (!"min".equals(avlTree.search(Integer.MIN_VALUE)) || !"max".equals(avlTree.search(Integer.MAX_VALUE))) {
+                return false;
+            }
+            int k = random.nextInt(20000) - 10000;
+            switch (round) { // every kind of change thaws the tree
+                case 0:
+                    avlTree.insert(k, "" + k);
+                    reference.put(k, "" + k);
+                    break;
+                case 1:
+                    avlTree.delete(reference.higherKey(k));
+                    reference.remove(reference.higherKey(k));
+                    break;
+                case 2:
+                    avlTree.insertAll(new int[] {k, k + 1}, new String[] {"" + k, "" + (k + 1)});
+                    reference.put(k, "" + k);
+                    reference.put(k + 1, "" + (k + 1));
+                    break;
+                case 3:
+                    avlTree.deleteAll(new int[] {reference.higherKey(k)});
+                    reference.remove(reference.higherKey(k));
+                    break;
+                default:
+                    int x = reference.higherKey(k);
+                    AVLTree[] parts = avlTree.split(x);
+                    AVLTree single = new AVLTree();
+                    single.insert(x, "" + x);
+                    parts[0].freeze();
+                    parts[1].freeze();
+                    parts[0].join(single.getRoot(), parts[1]);
+                    if (parts[1].isFrozen() || parts[1].search(x) != null) {
+                        return false;
+                    }
+                    avlTree = parts[0];
+            }
+        }
+        return true;
+    }
+
+    public boolean snapshotStreams() throws java.io.IOException {
+        java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+        java.util.Random random = new java.util.Random(19);
+        for (int i = 0; i < 5000; i++) {
+            int k = random.nextInt();
+            reference.put(k, i % 7 == 0 ? null : "v" + k);
+        }
+        reference.put(Integer.MIN_VALUE, "\u00e9\u4e2d\ud83d\ude00 lone \ud800 end");
+        reference.put(Integer.MAX_VALUE, "");
+        StringBuilder big = new StringBuilder();
+        while (big.length() < 100000) {
+            big.append("long \u00e9 value ");
+        }
+        reference.put(0, big.toString());
+        AVLTree avlTree = new AVLTree();
+        for (java.util.Map.Entry<Integer, String> entry : reference.entrySet()) {
+            avlTree.insert(entry.getKey(), entry.getValue());
+        }
+        java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+        avlTree.writeTo(bytes);
+        java.io.ByteArrayOutputStream channelBytes = new java.io.ByteArrayOutputStream();
+        avlTree.writeTo(java.nio.channels.Channels.newChannel(channelBytes));
+        if (!java.util.Arrays.equals(bytes.toByteArray(), channelBytes.toByteArray())) {
+            return false;
+        }
+        AVLTree[] copies = {
+                AVLTree.readFrom(new java.io.ByteArrayInputStream(bytes.toByteArray())),
+                AVLTree.readFrom(java.nio.channels.Channels.newChannel(new java.io.ByteArrayInputStream(bytes.toByteArray())))};
+        int[] keys = avlTree.keysToArray();
+        String[] infos = new String[keys.length];
+        int i = 0;
+        for (String value : reference.values()) {
+            infos[i++] = value == null ? null : new String(value.getBytes(java.nio.charset.StandardCharsets.UTF_8),
+                    java.nio.charset.StandardCharsets.UTF_8);
+        }
+        int height = AVLTree.fromSorted(keys, infos).getRoot().getHeight();
+        for (AVLTree copy : copies) {
+            if (!java.util.Arrays.equals(copy.keysToArray(), keys) || !java.util.Arrays.equals(copy.infoToArray(), infos)
+                    || copy.getRoot().getHeight() != height || copy.size() != keys.length
+                    || copy.insert(Integer.MIN_VALUE, "x") != -1 || copy.delete(Integer.MAX_VALUE) < 0
+                    || copy.search(Integer.MAX_VALUE) != null) {
+                return false;
+            }
+        }
+        java.io.ByteArrayOutputStream empty = new java.io.ByteArrayOutputStream();
+        new AVLTree().writeTo(empty);
+        if (!AVLTree.readFrom(new java.io.ByteArrayInputStream(empty.toByteArray())).empty()) {
+            return false;
+        }
+        byte[] truncated = java.util.Arrays.copyOf(bytes.toByteArray(), bytes.size() - 3);
+        try {
+            AVLTree.readFrom(new java.io.ByteArrayInputStream(truncated));
+            return false;
+        } catch (java.io.EOFException expected) {
+        }
+        try {
+            AVLTree.readFrom(new java.io.ByteArrayInputStream(new byte[] {1, 2, 3, 4, 0}));
+            return false;
+        } catch (java.io.IOException expected) {
+            return true;
+        }
+    }
+
+    public boolean durableRecovery() throws java.io.IOException {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("avl-durable");
+        try {
+            java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+            DurableAVLTree durable = DurableAVLTree.open(directory, 1, 0);
+            for (int i = 0; i < 300; i++) {
+                durable.insert(3 * i, i % 10 == 0 ? null : "v" + i);
+                reference.put(3 * i, i % 10 == 0 ? null : "v" + i);
+            }
+            for (int i = 0; i < 300; i += 7) {
+                durable.delete(3 * i);
+                reference.remove(3 * i);
+            }
+            AVLTree larger = new AVLTree();
+            for (int i = 1000; i < 1100; i++) {
+                larger.insert(i, "j" + i);
+                reference.put(i, "j" + i);
+            }
+            AVLTree middle = new AVLTree();
+            middle.insert(950, "m");
+            reference.put(950, "m");
+            durable.join(middle.getRoot(), larger);
+            durable.close();
+            durable = DurableAVLTree.open(directory, 1, 0); // replays the whole log
+            if (!sameDurable(durable, reference)) {
+                return false;
+            }
+            durable.checkpoint();
+            durable.delete(950);
+            reference.remove(950);
+            try (java.nio.channels.FileChannel log = java.nio.channels.FileChannel.open(directory.resolve("log-1"),
+                    java.nio.file.StandardOpenOption.WRITE, java.nio.file.StandardOpenOption.APPEND)) {
+                log.write(java.nio.ByteBuffer.wrap(new byte[] {0, 0, 0, 20, 1, 2, 3})); // a torn record
+            }
+            DurableAVLTree recovered = DurableAVLTree.open(directory, 1, 0); // as if the first one crashed
+            if (!sameDurable(recovered, reference)
+                    || java.nio.file.Files.exists(directory.resolve("checkpoint-0")) || java.nio.file.Files.exists(directory.resolve("log-0"))) {
+                return false;
+            }
+            recovered.split(500);
+            recovered.close();
+            durable.close();
+            DurableAVLTree grouped = DurableAVLTree.open(directory, 100, 2000);
+            if (!grouped.empty()) {
+                return false;
+            }
+            reference.clear();
+            for (int i = 0; i < 50; i++) {
+                grouped.insert(i, "g" + i);
+                reference.put(i, "g" + i);
+            }
+            DurableAVLTree unsynced = DurableAVLTree.open(directory, 1, 0); // the group has not been forced yet
+            boolean lost = unsynced.empty();
+            unsynced.close();
+            grouped.sync();
+            for (int i = 50; i < 400; i++) { // the log outgrows 2000 bytes: several checkpoints
+                grouped.insert(i, "g" + i);
+                reference.put(i, "g" + i);
+            }
+            grouped.close();
+            DurableAVLTree reopened = DurableAVLTree.open(directory, 1, 0);
+            boolean same = sameDurable(reopened, reference);
+            reopened.close();
+            long files;
+            try (java.util.stream.Stream<java.nio.file.Path> list = java.nio.file.Files.list(directory)) {
+                files = list.count();
+            }
+            return lost && same && files == 2 && !java.nio.file.Files.exists(directory.resolve("checkpoint-1"));
+        } finally {
+            try (java.util.stream.Stream<java.nio.file.Path> list = java.nio.file.Files.list(directory)) {
+                for (java.nio.file.Path file : (Iterable<java.nio.file.Path>) list::iterator) {
+                    java.nio.file.Files.delete(file);
+                }
+            }
+            java.nio.file.Files.delete(directory);
+        }
+    }
+
+    private static boolean sameDurable(DurableAVLTree durable, java.util.TreeMap<Integer, String> reference) {
+        int[] keys = durable.keysToArray();
+        String[] infos = durable.infoToArray();
+        int i = 0;
+        for (java.util.Map.Entry<Integer, String> entry : reference.entrySet()) {
+            if (keys[i] != entry.getKey() || !java.util.Objects.equals(infos[i], entry.getValue())) {
+                return false;
+            }
+            i++;
+        }
+        return i == keys.length;
+    }
+
+    public boolean setOperations() {
+        java.util.Random random = new java.util.Random(21);
+        int[][] sizes = {{0, 50}, {50, 0}, {3000, 3000}, {20000, 20000}, {30000, 40}, {40, 30000}};
+        for (int[] size : sizes) {
+            for (int operation = 0; operation < 3; operation++) {
+                java.util.TreeMap<Integer, String> first = new java.util.TreeMap<>();
+                java.util.TreeMap<Integer, String> second = new java.util.TreeMap<>();
+                int range = 2 * (size[0] + size[1]) + 1;
+                while (first.size() < size[0]) {
+                    int k = random.nextInt(range) - range / 2;
+                    first.put(k, "a" + k);
+                }
+                while (second.size() < size[1]) {
+                    int k = random.nextInt(range) - range / 2;
+                    second.put(k, "b" + k);
+                }
+                AVLTree avlTree = treeOf(first);
+                AVLTree other = treeOf(second);
+                java.util.TreeMap<Integer, String> expected = new java.util.TreeMap<>(first);
+                if (operation == 0) {
+                    avlTree.union(other);
+                    for (java.util.Map.Entry<Integer, String> entry : second.entrySet()) {
+                        expected.putIfAbsent(entry.getKey(), entry.getValue());
+                    }
+                } else if (operation == 1) {
+                    avlTree.intersect(other);
+                    expected.keySet().retainAll(second.keySet());
+                } else {
+                    avlTree.difference(other);
+                    expected.keySet().removeAll(second.keySet());
+                }
+                if (!other.empty() || !sameTree(avlTree, expected)) {
+                    return false;
+                }
+            }
+        }
+        AVLTree self = treeOf(new java.util.TreeMap<>(java.util.Collections.singletonMap(1, "1")));
+        self.union(self);
+        if (self.size() != 1) {
+            return false;
+        }
+        self.difference(self);
+        return self.empty();
+    }
+
+    private static AVLTree treeOf(java.util.TreeMap<Integer, String> items) {
+        AVLTree tree = new AVLTree();
+        for (java.util.Map.Entry<Integer, String> entry : items.entrySet()) {
+            tree.insert(entry.getKey(), entry.getValue());
+        }
+        return tree;
+    }
+
+    private boolean sameTree(AVLTree tree, java.util.TreeMap<Integer, String> expected) {
+        if (tree.size() != expected.size() || (!expected.isEmpty()
+                && (!ranksConsistent(tree.getRoot()) || !tree.min().equals(expected.firstEntry().getValue())
+                || !tree.max().equals(expected.lastEntry().getValue())))) {
+            return false;
+        }
+        int i = 0;
+        int[] keys = tree.keysToArray();
+        String[] infos = tree.infoToArray();
+        for (java.util.Map.Entry<Integer, String> entry : expected.entrySet()) {
+            if (keys[i] != entry.getKey() || !infos[i].equals(entry.getValue()) || tree.select(i) != keys[i]) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    public boolean parallelBuildAndExport() throws Exception {
+        int n = 100000;
+        int[] keys = new int[n];
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = 5 * i - n;
+            values[i] = i % 9 == 4 ? null : "v" + i;
+        }
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            AVLTree built = pool.submit(() -> AVLTree.parallelFromSorted(keys, values)).get();
+            AVLTree expected = AVLTree.fromSorted(keys, values);
+            if (built.size() != n || built.getRoot().getHeight() != expected.getRoot().getHeight()
+                    || !ranksConsistent(built.getRoot()) || built.select(n / 3) != keys[n / 3]
+                    || built.max() != values[n - 1] || built.min() != values[0]) {
+                return false;
+            }
+            for (int i = 0; i < n; i += 997) { // deletes and inserts also check the parent pointers
+                built.delete(keys[i]);
+                built.insert(keys[i] + 1, "new");
+            }
+            if (!java.util.Arrays.equals(pool.submit(built::parallelKeysToArray).get(), built.keysToArray())
+                    || !java.util.Arrays.equals(built.parallelInfoToArray(), built.infoToArray())
+                    || new AVLTree().parallelKeysToArray().length != 0) {
+                return false;
+            }
+            for (int bad : new int[] {1, n / 2, n / 2 + 1, n - 1}) { // inside a range and at a forked middle
+                int[] unsorted = keys.clone();
+                unsorted[bad] = unsorted[bad - 1];
+                try {
+                    pool.submit(() -> AVLTree.parallelFromSorted(unsorted, values)).get();
+                    return false;
+                } catch (java.util.concurrent.ExecutionException expectedFailure) {
+                    if (!(expectedFailure.getCause() instanceof IllegalArgumentException)) {
+                        return false;
+                    }
+                }
+            }
+            return AVLTree.parallelFromSorted(new int[0], new String[0]).empty();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public boolean keyStreams() throws Exception {
+        AVLTree tree = new AVLTree();
+        java.util.TreeMap<Integer, String> expected = new java.util.TreeMap<>();
+        java.util.Random random = new java.util.Random(23);
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(100000) - 50000;
+            String value = i % 7 == 3 ? null : "v" + key;
+            tree.insert(key, value);
+            if (!expected.containsKey(key)) { // the tree keeps the first info of a key, even a null one
+                expected.put(key, value);
+            }
+        }
+        long sum = 0;
+        for (int key : expected.keySet()) {
+            sum += key;
+        }
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            long parallelSum = pool.submit(() -> tree.keyStream().parallel().asLongStream().sum()).get();
+            int[] parallelKeys = pool.submit(() -> tree.keyStream().parallel().filter(k -> k % 3 == 0).toArray()).get();
+            int[] expectedKeys = expected.keySet().stream().mapToInt(Integer::intValue).filter(k -> k % 3 == 0).toArray();
+            if (parallelSum != sum || tree.keyStream().asLongStream().sum() != sum
+                    || !java.util.Arrays.equals(parallelKeys, expectedKeys)
+                    || !java.util.Arrays.equals(tree.keyStream().toArray(), tree.keysToArray())) {
+                return false;
+            }
+            java.util.List<String> infos = pool.submit(() -> tree.entryStream().parallel()
+                    .map(AVLTree.IAVLNode::getValue).collect(java.util.stream.Collectors.toList())).get();
+            if (!infos.equals(new java.util.ArrayList<>(expected.values()))) {
+                return false;
+            }
+            for (int[] range : new int[][] {{-1000, 1000}, {-60000, -49990}, {49000, 60000}, {5, 4}, {7, 7}}) {
+                java.util.NavigableMap<Integer, String> sub = range[0] > range[1] ? new java.util.TreeMap<>()
+                        : expected.subMap(range[0], true, range[1], true);
+                if (tree.keyStream(range[0], range[1]).parallel().count() != sub.size()
+                        || !java.util.Arrays.equals(tree.keyStream(range[0], range[1]).toArray(),
+                                sub.keySet().stream().mapToInt(Integer::intValue).toArray())
+                        || tree.entryStream(range[0], range[1]).parallel().mapToInt(AVLTree.IAVLNode::getKey).sum()
+                                != sub.keySet().stream().mapToInt(Integer::intValue).sum()) {
+                    return false;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        java.util.Spliterator.OfInt whole = tree.keyStream().spliterator();
+        int flags = java.util.Spliterator.SIZED | java.util.Spliterator.SUBSIZED | java.util.Spliterator.ORDERED
+                | java.util.Spliterator.SORTED | java.util.Spliterator.DISTINCT;
+        long size = whole.estimateSize();
+        if (size != expected.size() || !whole.hasCharacteristics(flags) || whole.getComparator() != null) {
+            return false;
+        }
+        java.util.Spliterator.OfInt prefix = whole.trySplit();
+        if (prefix == null || prefix.estimateSize() + whole.estimateSize() != size
+                || Math.abs(prefix.estimateSize() - whole.estimateSize()) > 1) {
+            return false;
+        }
+        int[] first = new int[1];
+        prefix.tryAdvance((int k) -> first[0] = k); // a part that has started still splits
+        java.util.Spliterator.OfInt quarter = prefix.trySplit();
+        int[] resumed = new int[1];
+        quarter.tryAdvance((int k) -> resumed[0] = k);
+        java.util.Spliterator<AVLTree.IAVLNode> entries = tree.entryStream().spliterator();
+        return first[0] == expected.firstKey() && resumed[0] == expected.higherKey(first[0])
+                && entries.hasCharacteristics(flags) && entries.getComparator() != null
+                && new AVLTree().keyStream().parallel().count() == 0;
+    }
+
+    public boolean rangeAggregates() {
+        java.util.Random random = new java.util.Random(24);
+        AVLTree.Aggregate[] aggregates = {AVLTree.SUM, AVLTree.MIN, AVLTree.MAX, AVLTree.COUNT};
+        for (AVLTree.Aggregate aggregate : aggregates) {
+            AVLTree tree = new AVLTree(aggregate);
+            AVLTree other = new AVLTree(aggregate);
+            java.util.TreeMap<Integer, String> expected = new java.util.TreeMap<>();
+            for (int i = 0; i < 6000; i++) {
+                int key = random.nextInt(20000);
+                String value = i % 11 == 5 ? null : Integer.toString(random.nextInt(2000001) - 1000000);
+                if (i % 2 == 0) {
+                    if (tree.insert(key, value) >= 0) {
+                        expected.put(key, value);
+                    }
+                }
+                else if (other.insert(key, value) >= 0 && !expected.containsKey(key)) {
+                    expected.put(key, value); // union keeps the info of tree for keys in both
+                }
+            }
+            tree.union(other); // large enough to combine in parallel
+            for (int i = 0; i < 2000; i++) {
+                int key = random.nextInt(20000);
+                tree.delete(key);
+                expected.remove(key);
+            }
+            AVLTree[] parts = tree.split(10000);
+            String middle = expected.containsKey(10000) ? expected.get(10000) : "42";
+            AVLTree single = new AVLTree();
+            single.insert(10000, middle);
+            parts[0].join(single.getRoot(), parts[1]);
+            expected.put(10000, middle);
+            tree = parts[0];
+            if (!ranksConsistent(tree.getRoot()) || tree.size() != expected.size()) {
+                return false;
+            }
+            for (int query = 0; query < 300; query++) {
+                int lo = random.nextInt(21000) - 500;
+                int hi = query % 10 == 0 ? lo - 1 : lo + random.nextInt(4000);
+                long want = aggregate.identity();
+                if (lo <= hi) {
+                    for (java.util.Map.Entry<Integer, String> entry : expected.subMap(lo, true, hi, true).entrySet()) {
+                        want = aggregate.combine(want, aggregate.valueOf(entry.getKey(), entry.getValue()));
+                    }
+                }
+                if (tree.aggregate(lo, hi) != want) {
+                    return false;
+                }
+            }
+        }
+        try {
+            new AVLTree(AVLTree.SUM).union(new AVLTree(AVLTree.MAX));
+            return false;
+        } catch (IllegalArgumentException expectedFailure) {
+        }
+        try {
+            new AVLTree().aggregate(0, 1);
+            return false;
+        } catch (IllegalStateException expectedFailure) {
+        }
+        return new AVLTree(AVLTree.MIN).aggregate(0, 10) == Long.MAX_VALUE;
+    }
+
+    public boolean intervalQueries() {
+        IntervalTree<String> tree = new IntervalTree<>();
+        java.util.TreeMap<String, long[]> expected = new java.util.TreeMap<>(); // "start:end" -> {start, end}
+        java.util.Random random = new java.util.Random(25);
+        for (int step = 0; step < 8000; step++) {
+            long start = random.nextInt(20000) - 10000L;
+            long end = start + (step % 5 == 0 ? random.nextInt(5000) : random.nextInt(20));
+            String name = start + ":" + end;
+            if (random.nextInt(4) == 0) {
+                if (!same(expected.containsKey(name) ? name : null, tree.remove(start, end))) {
+                    return false;
+                }
+                expected.remove(name);
+            } else {
+                tree.put(start, end, name);
+                expected.put(name, new long[] {start, end});
+            }
+        }
+        if (tree.size() != expected.size() || mapHeight(tree.root) < -1 || !maxEndsConsistent(tree.root)) {
+            return false;
+        }
+        for (int query = 0; query < 400; query++) {
+            long lo = random.nextInt(24000) - 12000L;
+            long hi = query % 2 == 0 ? lo : lo + random.nextInt(300);
+            java.util.List<long[]> want = new java.util.ArrayList<>();
+            for (long[] interval : expected.values()) {
+                if (interval[0] <= hi && interval[1] >= lo) {
+                    want.add(interval);
+                }
+            }
+            want.sort((x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0]) : Long.compare(x[1], y[1]));
+            java.util.Iterator<IntervalTree.Interval<String>> found = query % 2 == 0 ? tree.stab(lo) : tree.overlapping(lo, hi);
+            for (long[] interval : want) {
+                if (!found.hasNext()) {
+                    return false;
+                }
+                IntervalTree.Interval<String> next = found.next();
+                if (next.getStart() != interval[0] || next.getEnd() != interval[1]
+                        || !next.getValue().equals(interval[0] + ":" + interval[1])) {
+                    return false;
+                }
+            }
+            if (found.hasNext()) {
+                return false;
+            }
+        }
+        try {
+            tree.put(5, 4, "backwards");
+            return false;
+        } catch (IllegalArgumentException expectedFailure) {
+        }
+        return !tree.overlapping(10, 9).hasNext() && !new IntervalTree<String>().stab(0).hasNext()
+                && tree.get(5, 4) == null;
+    }
+
+    /**
+     * true if every node of the subtree holds the largest end below it
+     */
+    private static boolean maxEndsConsistent(IntervalTree.Interval<?> node) {
+        if (node == null) {
+            return true;
+        }
+        long maxEnd = Math.max(node.getEnd(), Math.max(IntervalTree.maxEnd(node.left), IntervalTree.maxEnd(node.right)));
+        return node.maxEnd == maxEnd && maxEndsConsistent(node.left) && maxEndsConsistent(node.right);
+    }
+
+    public boolean durableRejectedJoin() throws java.io.IOException {
+        java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("avl-durable");
+        try {
+            DurableAVLTree durable = DurableAVLTree.open(directory, 1, 0);
+            for (int i = 0; i < 10; i++) {
+                durable.insert(i, "v" + i);
+            }
+            AVLTree[] rejected = new AVLTree[] {new AVLTree(AVLTree.SUM), new AVLTree(), new AVLTree()};
+            rejected[0].insert(100, "1"); // keeps an aggregate
+            rejected[1].insert(5, "inside"); // overlaps the keys of the durable tree
+            rejected[2].insert(100, "far");
+            int[] middles = {50, 50, 7}; // the last middle key is inside the durable tree
+            for (int i = 0; i < rejected.length; i++) {
+                AVLTree middle = new AVLTree();
+                middle.insert(middles[i], "m");
+                try {
+                    durable.join(middle.getRoot(), rejected[i]);
+                    return false;
+                } catch (IllegalArgumentException expected) {
+                }
+                if (rejected[i].size() != 1) {
+                    return false;
+                }
+            }
+            AVLTree smaller = new AVLTree();
+            smaller.insert(-5, "s");
+            AVLTree middle = new AVLTree();
+            middle.insert(-1, "m");
+            durable.join(middle.getRoot(), smaller); // t on the smaller side is accepted
+            durable.close();
+            DurableAVLTree reopened = DurableAVLTree.open(directory, 1, 0);
+            java.util.TreeMap<Integer, String> reference = new java.util.TreeMap<>();
+            for (int i = 0; i < 10; i++) {
+                reference.put(i, "v" + i);
+            }
+            reference.put(-5, "s");
+            reference.put(-1, "m");
+            boolean same = sameDurable(reopened, reference);
+            reopened.close();
+            return same;
+        } finally {
+            try (java.util.stream.Stream<java.nio.file.Path> list = java.nio.file.Files.list(directory)) {
+                for (java.nio.file.Path file : (Iterable<java.nio.file.Path>) list::iterator) {
+                    java.nio.file.Files.delete(file);
+                }
+            }
+            java.nio.file.Files.delete(directory);
+        }
+    }
+
+    public boolean immutableVirtualLeaf() {
+        AVLTree tree = new AVLTree();
+        tree.insert(1, "a");
+        tree.insert(2, "b");
+        AVLTree.IAVLNode virtual = tree.getRoot().getLeft();
+        AVLTree.IAVLNode real = tree.getRoot();
+        java.util.List<Runnable> writes = java.util.Arrays.<Runnable>asList(
+                () -> virtual.setParent(real), () -> virtual.setLeft(real),
+                () -> virtual.setRight(real), () -> virtual.setHeight(5));
+        for (Runnable write : writes) {
+            try {
+                write.run();
+                return false;
+            } catch (IllegalStateException expected) {
+            }
+        }
+        AVLTree other = new AVLTree();
+        other.insert(7, "x");
+        return virtual.getParent() == null && virtual.getLeft() == null && virtual.getRight() == null
+                && virtual.getHeight() == -1 && other.getRoot().getLeft() == virtual
+                && other.getRoot().getHeight() == 0 && tree.size() == 2;
+    }
+
+    public boolean arraySplitMissingKey() {
+        for (int x : new int[] {5, -1, 19, 100}) {
+            ArrayAVLTree tree = new ArrayAVLTree();
+            for (int k = 0; k < 20; k += 2) {
+                tree.insert(k, "" + k);
+            }
+            tree.delete(8); // leaves a slot on the free list
+            ArrayAVLTree[] parts = tree.split(x);
+            int[] smaller = parts[0].keysToArray();
+            int[] larger = parts[1].keysToArray();
+            if (smaller.length + larger.length != 9 || !tree.empty()
+                    || (!parts[0].empty() && !checkBalanceOfTree(parts[0].getRoot()))
+                    || (!parts[1].empty() && !checkBalanceOfTree(parts[1].getRoot()))) {
+                return false;
+            }
+            for (int k : smaller) {
+                if (k >= x) {
+                    return false;
+                }
+            }
+            for (int k : larger) {
+                if (k <= x) {
+                    return false;
+                }
+            }
+            for (int k = 200; k < 260; k++) { // both trees keep allocating from the shared pool
+                parts[1].insert(k, "" + k);
+            }
+            if (parts[1].size() != larger.length + 60 || parts[0].size() != smaller.length
+                    || !checkBalanceOfTree(parts[1].getRoot()) || !TesterUtils.arraysIdentical(parts[0].keysToArray(), smaller)) {
+                return false;
+            }
+        }
+        ArrayAVLTree[] parts = new ArrayAVLTree().split(3);
+        return parts[0].empty() && parts[1].empty();
+    }
+
+    public boolean mappedTruncatedFile() throws java.io.IOException {
+        java.io.File file = java.io.File.createTempFile("avl", ".map");
+        file.deleteOnExit();
+        MappedAVLTree tree = MappedAVLTree.open(file.toPath());
+        tree.insert(1, "one");
+        tree.close();
+        byte[] whole = java.nio.file.Files.readAllBytes(file.toPath());
+        for (int length : new int[] {1, 3, 4, 20, MappedAVLTree.HEADER_BYTES, MappedAVLTree.HEADER_BYTES + 1}) {
+            java.nio.file.Files.write(file.toPath(), java.util.Arrays.copyOf(whole, length));
+            try {
+                MappedAVLTree.open(file.toPath()).close();
+                return false;
+            } catch (java.io.IOException expected) {
+            }
+        }
+        java.nio.file.Files.write(file.toPath(), new byte[0]); // an empty file is a new, empty tree
+        MappedAVLTree fresh = MappedAVLTree.open(file.toPath());
+        boolean empty = fresh.empty();
+        fresh.close();
+        return empty;
+    }
+
+    public boolean arrayImmutableVirtualLeaf() {
+        ArrayAVLTree tree = new ArrayAVLTree();
+        for (int k = 0; k < 20; k += 2) {
+            tree.insert(k, "" + k);
+        }
+        ArrayAVLTree[] parts = tree.split(9);
+        AVLTree.IAVLNode virtual = parts[0].getRoot().getLeft();
+        while (virtual.isRealNode()) {
+            virtual = virtual.getLeft();
+        }
+        final AVLTree.IAVLNode shared = virtual;
+        final AVLTree.IAVLNode real = parts[1].getRoot();
+        java.util.List<Runnable> writes = java.util.Arrays.<Runnable>asList(
+                () -> shared.setParent(real), () -> shared.setLeft(real),
+                () -> shared.setRight(real), () -> shared.setHeight(7));
+        for (Runnable write : writes) {
+            try {
+                write.run();
+                return false;
+            } catch (IllegalStateException expected) {
+            }
+        }
+        AVLTree.IAVLNode node = parts[1].getRoot();
+        while (node.isRealNode()) {
+            node = node.getRight();
+        }
+        return node.getHeight() == -1 && checkBalanceOfTree(parts[1].getRoot()) && parts[1].size() == 5;
+    }
+
+    public boolean arrayJoinReleasesOtherPool() {
+        ArrayAVLTree tree = new ArrayAVLTree();
+        ArrayAVLTree other = new ArrayAVLTree(); // a pool of its own
+        int next = 0;
+        int capacity = -1;
+        for (int round = 0; round < 200; round++) {
+            for (int i = 0; i < 50; i++) {
+                other.insert(next + 1 + i, "o");
+            }
+            ArrayAVLTree single = new ArrayAVLTree();
+            single.insert(next, "m");
+            tree.join(single.getRoot(), other);
+            next += 51;
+            if (!other.empty()) {
+                return false;
+            }
+            if (round == 0) {
+                capacity = other.pool.keys.length;
+            }
+        }
+        int[] keys = tree.keysToArray();
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != i) {
+                return false;
+            }
+        }
+        return keys.length == next && other.pool.keys.length == capacity && checkBalanceOfTree(tree.getRoot());
+    }
+
+    public boolean mappedDirtyAfterCrash() throws java.io.IOException {
+        java.nio.file.Path file = java.nio.file.Files.createTempFile("avl", ".map");
+        java.nio.file.Path crashed = java.nio.file.Files.createTempFile("avl", ".crashed");
+        try {
+            java.nio.file.Files.delete(file);
+            MappedAVLTree tree = MappedAVLTree.open(file);
+            for (int k = 0; k < 100; k++) {
+                tree.insert(k, "v" + k);
+            }
+            tree.force();
+            java.nio.file.Files.copy(file, crashed, java.nio.file.StandardCopyOption.REPLACE_EXISTING); // forced: consistent
+            MappedAVLTree copy = MappedAVLTree.open(crashed);
+            boolean forcedOpens = copy.size() == 100;
+            copy.close();
+            tree.delete(50); // not forced yet: a copy now is what a crash would leave
+            java.nio.file.Files.copy(file, crashed, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+            try {
+                MappedAVLTree.open(crashed).close();
+                return false;
+            } catch (java.io.IOException expected) {
+            }
+            tree.close();
+            MappedAVLTree reopened = MappedAVLTree.open(file);
+            boolean closedOpens = reopened.size() == 99 && reopened.search(50) == null && "v51".equals(reopened.search(51));
+            reopened.close();
+            return forcedOpens && closedOpens;
+        } finally {
+            java.nio.file.Files.deleteIfExists(file);
+            java.nio.file.Files.deleteIfExists(crashed);
+        }
+    }
+
 }
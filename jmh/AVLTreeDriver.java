@@ -0,0 +1,91 @@
+import avl.jmh.TreeDriver;
+
+/**
+ *
+ * AVLTreeDriver
+ *
+ * TreeDriver over AVLTree, for the JMH benchmarks in avl.jmh (see TreeDriver for
+ * why they cannot call AVLTree directly). Key orders come from OperationBench, so
+ * both runners visit the same keys.
+ *
+ */
+public class AVLTreeDriver implements TreeDriver {
+
+    private static final String VALUE = "v";
+
+    private AVLTree tree = new AVLTree();
+    private int size;
+    private AVLTree[] parts;
+    private AVLTree.IAVLNode middle;
+
+    @Override
+    public void load(int n) {
+        int[] keys = new int[n];
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = 2 * i;
+            values[i] = VALUE;
+        }
+        tree = AVLTree.fromSorted(keys, values);
+        size = n;
+    }
+
+    @Override
+    public int[] keyOrder(String distribution, int m) {
+        return OperationBench.keyOrder(distribution, size, m);
+    }
+
+    @Override
+    public int insert(int key) {
+        return tree.insert(key, VALUE);
+    }
+
+    @Override
+    public int delete(int key) {
+        return tree.delete(key);
+    }
+
+    @Override
+    public String search(int key) {
+        return tree.search(key);
+    }
+
+    @Override
+    public String min() {
+        return tree.min();
+    }
+
+    @Override
+    public String max() {
+        return tree.max();
+    }
+
+    @Override
+    public int[] keysToArray() {
+        return tree.keysToArray();
+    }
+
+    @Override
+    public String[] infoToArray() {
+        return tree.infoToArray();
+    }
+
+    @Override
+    public void split(int key) {
+        parts = tree.split(key);
+    }
+
+    @Override
+    public void prepareJoin(int key) {
+        AVLTree single = new AVLTree();
+        single.insert(key, VALUE);
+        middle = single.getRoot();
+    }
+
+    @Override
+    public int join() {
+        int cost = parts[0].join(middle, parts[1]);
+        tree = parts[0];
+        return cost;
+    }
+}
@@ -0,0 +1,69 @@
+package avl.jmh;
+
+/**
+ *
+ * TreeDriver
+ *
+ * The tree operations the JMH benchmarks measure. JMH only accepts benchmarks in a
+ * named package and a named package cannot refer to AVLTree, which lives in the
+ * default package, so AVLTreeDriver implements this interface over AVLTree and
+ * create() loads it by name. Every benchmark calls a single implementation, so the
+ * JIT inlines these calls.
+ *
+ * A tree of size n holds the even keys 0..2n-2, as in OperationBench.
+ *
+ */
+public interface TreeDriver {
+
+    /**
+     * replaces the tree by one of size n
+     */
+    void load(int n);
+
+    /**
+     * returns m indexes in 0..n-1 in the order the distribution (sequential, random,
+     * zipfian or alternating) visits them, n being the size of the last load
+     */
+    int[] keyOrder(String distribution, int m);
+
+    int insert(int key);
+
+    int delete(int key);
+
+    String search(int key);
+
+    String min();
+
+    String max();
+
+    int[] keysToArray();
+
+    String[] infoToArray();
+
+    /**
+     * splits the tree at key, which must be in it, and keeps both halves for join()
+     */
+    void split(int key);
+
+    /**
+     * makes the single node holding key that the next join() puts between the halves
+     */
+    void prepareJoin(int key);
+
+    /**
+     * joins the halves of the last split around the node of prepareJoin and makes the
+     * result the tree again. returns what AVLTree.join returns
+     */
+    int join();
+
+    /**
+     * returns a new driver over an empty AVLTree
+     */
+    static TreeDriver create() {
+        try {
+            return (TreeDriver) Class.forName("AVLTreeDriver").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("AVLTreeDriver is missing from the class path", e);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package avl.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ *
+ * TreeOperations
+ *
+ * JMH versions of the OperationBench cases. Every operation runs on a tree of each
+ * size, and the operations that take a key also run for each key distribution.
+ * Each benchmark reports two modes:
+ * Throughput in ops/us (multiply by 10^6 for ops/s), and SampleTime in us/op with
+ * its p0.50, p0.99 and p0.999 percentiles. Add -prof gc for the bytes allocated
+ * per operation (gc.alloc.rate.norm).
+ *
+ * insert, delete, split and join change the tree, so a per-invocation fixture undoes
+ * or prepares each call outside the measurement. The tree is then the same before
+ * every call, at the price of JMH timing each of these calls on its own. That adds a
+ * few tens of nanoseconds to each, so compare them with each other and across runs
+ * rather than with search. -prof gc also counts what those fixtures allocate, such as
+ * the node join() puts between the halves.
+ *
+ * Usage, from the repository root:
+ * mvn -P jmh package
+ * java -jar target/benchmarks.jar TreeOperations -p size=100000 -p distribution=random,zipfian -prof gc
+ * The default parameters run every size up to 10M; the forks get a 4 GB heap.
+ *
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class TreeOperations {
+
+    static final int MAX_KEYS = 200000; // length of each key order, as OperationBench's MAX_OPS
+
+
+    /**
+     * A tree of the given size, for the operations that do not take a key.
+     */
+    @State(Scope.Thread)
+    public static class Sized {
+        @Param({"1000", "10000", "100000", "1000000", "10000000"})
+        public int size;
+
+        TreeDriver tree;
+
+        @Setup(Level.Trial)
+        public void load() {
+            tree = TreeDriver.create();
+            tree.load(size);
+            loaded();
+        }
+
+        /**
+         * runs after every load; JMH does not order the fixtures of a class and its subclasses
+         */
+        void loaded() {
+        }
+    }
+
+
+    /**
+     * A tree of the given size and the keys in it, visited in the order of the distribution.
+     */
+    public static class Keyed extends Sized {
+        @Param({"sequential", "random", "zipfian", "alternating"})
+        public String distribution;
+
+        private int[] order;
+        private int next;
+
+        @Override
+        void loaded() {
+            order = tree.keyOrder(distribution, Math.min(size, MAX_KEYS));
+        }
+
+        /**
+         * returns the next key of the order; it is always in the tree
+         */
+        int nextKey() {
+            int key = 2 * order[next];
+            next = next + 1 == order.length ? 0 : next + 1;
+            return key;
+        }
+    }
+
+
+    public static class Insertion extends Keyed {
+        int key;
+
+        @Setup(Level.Invocation)
+        public void pick() {
+            key = nextKey() + 1;
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo() {
+            tree.delete(key);
+        }
+    }
+
+
+    public static class Deletion extends Keyed {
+        int key;
+
+        @Setup(Level.Invocation)
+        public void pick() {
+            key = nextKey();
+        }
+
+        @TearDown(Level.Invocation)
+        public void undo() {
+            tree.insert(key);
+        }
+    }
+
+
+    public static class Splitting extends Keyed {
+        int key;
+
+        @Setup(Level.Invocation)
+        public void pick() {
+            key = nextKey();
+        }
+
+        @TearDown(Level.Invocation)
+        public void rejoin() {
+            tree.prepareJoin(key);
+            tree.join();
+        }
+    }
+
+
+    public static class Joining extends Keyed {
+        @Setup(Level.Invocation)
+        public void split() {
+            int key = nextKey();
+            tree.split(key);
+            tree.prepareJoin(key);
+        }
+    }
+
+
+    @Benchmark
+    public int insert(Insertion state) {
+        return state.tree.insert(state.key);
+    }
+
+    @Benchmark
+    public int delete(Deletion state) {
+        return state.tree.delete(state.key);
+    }
+
+    @Benchmark
+    public String search(Keyed state) {
+        return state.tree.search(state.nextKey());
+    }
+
+    @Benchmark
+    public String min(Sized state) {
+        return state.tree.min();
+    }
+
+    @Benchmark
+    public String max(Sized state) {
+        return state.tree.max();
+    }
+
+    @Benchmark
+    public int[] keysToArray(Sized state) {
+        return state.tree.keysToArray();
+    }
+
+    @Benchmark
+    public String[] infoToArray(Sized state) {
+        return state.tree.infoToArray();
+    }
+
+    @Benchmark
+    public void split(Splitting state) {
+        state.tree.split(state.key);
+    }
+
+    @Benchmark
+    public int join(Joining state) {
+        return state.tree.join();
+    }
+}